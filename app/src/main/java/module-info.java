@@ -10,6 +10,7 @@ module psarc.app {
     requires javafx.base;
     requires javafx.controls;
     requires javafx.graphics;
+    requires jdk.unsupported;
     requires org.slf4j;
     requires org.tukaani.xz;
     requires wtf.reversed.toolbox;
@@ -1,10 +1,12 @@
 package sh.adelessfox.psarc;
 
+import atlantafx.base.controls.CustomTextField;
 import atlantafx.base.controls.Spacer;
 import atlantafx.base.theme.PrimerLight;
 import atlantafx.base.theme.Styles;
 import atlantafx.base.theme.Tweaks;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.*;
 import javafx.scene.Cursor;
@@ -25,46 +27,66 @@ import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sh.adelessfox.psarc.archive.Archive;
 import sh.adelessfox.psarc.archive.Asset;
-import sh.adelessfox.psarc.archive.AssetId;
 import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
 import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+import sh.adelessfox.psarc.extract.ExtractCache;
 import sh.adelessfox.psarc.settings.Settings;
+import sh.adelessfox.psarc.ui.PreviewPane;
 import sh.adelessfox.psarc.ui.StatusBar;
 import sh.adelessfox.psarc.ui.StructuredTreeItem;
+import sh.adelessfox.psarc.util.ContentType;
 import sh.adelessfox.psarc.util.Filenames;
 import sh.adelessfox.psarc.util.Fugue;
 import sh.adelessfox.psarc.util.FxUtils;
 import sh.adelessfox.psarc.util.Mica;
+import sh.adelessfox.psarc.util.RateLimiter;
 import wtf.reversed.toolbox.type.FileCount;
 import wtf.reversed.toolbox.type.FileSize;
 
 import java.awt.*;
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-
-import static java.nio.file.StandardOpenOption.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public final class AppWindow extends Application {
     private static final Logger log = LoggerFactory.getLogger(AppWindow.class);
 
     private static final String TITLE = "PSARC Viewer";
     private static final List<String> EXTENSIONS = List.of("*.psarc", "*.psarc.000", "*.psarc.66600");
+    private static final long CACHE_BUDGET = 1L << 30;
 
     private final ObjectProperty<Path> path = new SimpleObjectProperty<>(this, "path");
     private final ObjectProperty<PsarcArchive> archive = new SimpleObjectProperty<>(this, "archive");
+    private final ObjectProperty<ArchiveStructure<?>> structure = new SimpleObjectProperty<>(this, "structure");
+    private final ObjectProperty<ArchiveStructure<?>> visibleStructure = new SimpleObjectProperty<>(this, "visibleStructure");
+    private final StringProperty filter = new SimpleStringProperty(this, "filter", "");
     private final BooleanProperty exporting = new SimpleBooleanProperty(this, "busy");
+    private final BooleanProperty loading = new SimpleBooleanProperty(this, "loading");
+    private final BooleanProperty extracting = new SimpleBooleanProperty(this, "extracting");
+    private final BooleanProperty archiveBusy = new SimpleBooleanProperty(this, "archiveBusy");
+    private final IntegerProperty detectedTypes = new SimpleIntegerProperty(this, "detectedTypes");
     private final StringProperty status = new SimpleStringProperty(this, "status");
+    private final StringProperty loadingStatus = new SimpleStringProperty(this, "loadingStatus");
+    private final StringProperty notice = new SimpleStringProperty(this, "notice");
+    private final RateLimiter rateLimiter = new RateLimiter();
+    private final PreviewPane preview = new PreviewPane();
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private final ExtractCache cache = new ExtractCache(Path.of(System.getProperty("java.io.tmpdir"), "psarc-cache"), CACHE_BUDGET);
 
     private Stage stage;
     private Settings settings;
     private ExportService service;
+    private LoadService loader;
+    private SearchService search;
+    private TemporaryFileService extractor;
+    private ContentSniffer sniffer;
 
     public AppWindow() {
     }
@@ -80,6 +102,9 @@ public final class AppWindow extends Application {
         var component = DaggerAppComponent.create();
         this.settings = component.settings();
         this.service = new ExportService();
+        // Reads and writes share the same budget
+        this.service.setReadRateLimiter(rateLimiter);
+        this.service.setWriteRateLimiter(rateLimiter);
 
         exporting.bind(service.runningProperty());
         status.bind(Bindings.format(
@@ -89,9 +114,65 @@ public final class AppWindow extends Application {
             service.messageProperty()
         ));
 
+        this.loader = new LoadService();
+        this.loader.setOnSucceeded(_ -> {
+            var result = loader.getValue();
+            extractor.cancel();
+            search.cancel();
+            search.setArchive(result.archive());
+            setSniffer(new ContentSniffer(result.archive(), this::contentTypeDetected));
+            setArchive(result.archive());
+            setStructure(result.structure());
+            setPath(result.path());
+            addRecentPath(result.path());
+        });
+        this.loader.setOnFailed(_ -> {
+            log.error("Error loading archive", loader.getException());
+            FxUtils.showExceptionDialog(stage, "Unable to load archive", loader.getException());
+        });
+
+        this.search = new SearchService();
+        this.search.setOnSucceeded(_ -> {
+            // The filter may have been cleared after the search completed
+            if (!filter.get().isBlank()) {
+                visibleStructure.set(search.getValue().structure());
+            }
+        });
+        this.search.setOnFailed(_ -> log.error("Error searching archive", search.getException()));
+
+        this.extractor = new TemporaryFileService();
+        this.extractor.setCache(cache);
+        this.extractor.setOnFailed(_ -> {
+            log.error("Error extracting asset", extractor.getException());
+            FxUtils.showExceptionDialog(stage, "Can't extract asset", extractor.getException());
+        });
+        extracting.bind(extractor.runningProperty());
+
+        // Content types are only detected while nothing else reads from the archive, including the preview
+        archiveBusy.bind(loading.or(exporting).or(extracting).or(preview.readingProperty()));
+        archiveBusy.addListener((_, _, newValue) -> {
+            if (sniffer != null) {
+                sniffer.setPaused(newValue);
+            }
+        });
+
+        structure.addListener((_, _, newValue) -> {
+            filter.set("");
+            visibleStructure.set(newValue);
+        });
+        filter.addListener((_, _, newValue) -> filterStructure(newValue));
+
+        loading.bind(loader.runningProperty());
+        loadingStatus.bind(Bindings.format(
+            "[%d/%d] %s",
+            loader.workDoneProperty().map(Number::intValue),
+            loader.totalWorkProperty().map(Number::intValue),
+            loader.messageProperty()
+        ));
+
         var root = new BorderPane();
         root.setTop(buildToolBar());
-        root.setCenter(buildTreeTableView());
+        root.setCenter(buildSplitPane());
         root.setBottom(buildStatusBar());
         Mica.installStyle(root);
 
@@ -100,7 +181,7 @@ public final class AppWindow extends Application {
 
         stage.initStyle(StageStyle.UNIFIED);
         stage.setScene(scene);
-        stage.setWidth(750);
+        stage.setWidth(1200);
         stage.setHeight(720);
         stage.show();
 
@@ -118,6 +199,16 @@ public final class AppWindow extends Application {
         FxUtils.installStylesheetHotReload(scene, scene.getStylesheets().getFirst());
     }
 
+    @Override
+    public void stop() {
+        setSniffer(null);
+        try {
+            cache.evict();
+        } catch (IOException e) {
+            log.warn("Error evicting extracted assets", e);
+        }
+    }
+
     public void setPath(Path path) {
         this.path.set(path);
     }
@@ -126,6 +217,34 @@ public final class AppWindow extends Application {
         this.archive.set(archive);
     }
 
+    private void setSniffer(ContentSniffer sniffer) {
+        if (this.sniffer != null) {
+            this.sniffer.close();
+        }
+        if (sniffer != null) {
+            sniffer.setPaused(archiveBusy.get());
+        }
+        this.sniffer = sniffer;
+    }
+
+    private void contentTypeDetected() {
+        // Called for each asset, so the tree is refreshed once for all types detected in the meantime
+        if (refreshPending.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                refreshPending.set(false);
+                detectedTypes.set(detectedTypes.get() + 1);
+            });
+        }
+    }
+
+    private ContentType getContentType(ArchiveStructure.File<?> file) {
+        return sniffer != null ? sniffer.get((PsarcAsset) file.asset) : null;
+    }
+
+    private void setStructure(ArchiveStructure<?> structure) {
+        this.structure.set(structure);
+    }
+
     public void addRecentPath(Path path) {
         var recentPaths = settings.recentPaths().compute(ArrayList::new);
         recentPaths.remove(path);
@@ -150,13 +269,19 @@ public final class AppWindow extends Application {
         if (path.equals(this.path.get())) {
             return;
         }
-        try {
-            setArchive(new PsarcArchive(path));
-            setPath(path);
-            addRecentPath(path);
-        } catch (IOException e) {
-            log.error("Error loading archive", e);
-            FxUtils.showExceptionDialog(stage, "Unable to load archive", e);
+        // Cancels the archive that is being loaded, if any
+        loader.setPath(path);
+        loader.restart();
+    }
+
+    private void filterStructure(String text) {
+        if (text.isBlank()) {
+            search.cancel();
+            visibleStructure.set(structure.get());
+        } else {
+            // Cancels the previous search, if any
+            search.setQuery(text.strip());
+            search.restart();
         }
     }
 
@@ -222,12 +347,19 @@ public final class AppWindow extends Application {
         Button extractButton = new Button("_Extract\u2026", Fugue.getImageView("folder-export"));
         extractButton.setTooltip(new Tooltip("Extract all files"));
         extractButton.setOnAction(_ -> extractArchive());
-        extractButton.disableProperty().bind(archive.isNull().or(exporting));
+        extractButton.disableProperty().bind(archive.isNull().or(exporting).or(loading));
 
         Button aboutButton = new Button("About", Fugue.getImageView("question-white"));
         aboutButton.setOnAction(_ -> showAboutDialog());
 
-        ToolBar toolBar = new ToolBar(openButton, extractButton, new Spacer(), aboutButton);
+        CustomTextField filterField = new CustomTextField();
+        filterField.setPromptText("Filter by name\u2026");
+        filterField.setLeft(Fugue.getImageView("magnifier"));
+        filterField.setPrefWidth(250);
+        filterField.textProperty().bindBidirectional(filter);
+        filterField.disableProperty().bind(archive.isNull());
+
+        ToolBar toolBar = new ToolBar(openButton, extractButton, new Spacer(), filterField, aboutButton);
         toolBar.getStyleClass().add("border-bottom");
         Mica.installStyle(toolBar);
 
@@ -237,14 +369,28 @@ public final class AppWindow extends Application {
     private StatusBar buildStatusBar() {
         ImageView stopButton = Fugue.getImageView("cross-white");
         stopButton.setCursor(Cursor.HAND);
-        stopButton.setOnMouseClicked(_ -> service.cancel());
+        stopButton.setOnMouseClicked(_ -> {
+            if (loading.get()) {
+                loader.cancel();
+            } else if (extracting.get()) {
+                extractor.cancel();
+            } else {
+                service.cancel();
+            }
+        });
 
         StatusBar statusBar = new StatusBar();
         statusBar.getStyleClass().add("border-top");
-        statusBar.messageProperty().bind(Bindings.when(exporting).then(status).otherwise((String) null));
-        statusBar.graphicProperty().bind(Bindings.when(exporting).then(stopButton).otherwise((ImageView) null));
+        statusBar.messageProperty().bind(Bindings.when(loading).then(loadingStatus)
+            .otherwise(Bindings.when(extracting).then(extractor.messageProperty())
+                .otherwise(Bindings.when(exporting).then(status).otherwise(notice))));
+        statusBar.graphicProperty().bind(Bindings.when(loading.or(exporting).or(extracting)).then(stopButton).otherwise((ImageView) null));
+        statusBar.rateLimitProperty().addListener((_, _, newValue) -> {
+            rateLimiter.setBytesPerSecond(newValue.longValue());
+        });
 
         archive.addListener((_, _, newValue) -> {
+            notice.set(null);
             if (newValue == null) {
                 statusBar.setTotalFiles(FileCount.ZERO);
                 statusBar.setTotalSize(FileSize.ZERO);
@@ -262,20 +408,46 @@ public final class AppWindow extends Application {
         return statusBar;
     }
 
-    private <K extends AssetId, V extends Asset<K>> TreeTableView<ArchiveStructure<V>> buildTreeTableView() {
+    private SplitPane buildSplitPane() {
+        var splitPane = new SplitPane(buildTreeTableView(), preview);
+        splitPane.setDividerPositions(0.55);
+        SplitPane.setResizableWithParent(preview, false);
+        return splitPane;
+    }
+
+    private <V extends Asset<?>> TreeTableView<ArchiveStructure<V>> buildTreeTableView() {
         var view = new TreeTableView<ArchiveStructure<V>>();
         view.getStyleClass().addAll(Styles.BG_DEFAULT, Styles.DENSE, Tweaks.EDGE_TO_EDGE);
         view.setShowRoot(false);
         view.setColumnResizePolicy(TreeTableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
         view.getColumns().setAll(buildTreeTableColumns());
 
-        archive.addListener((_, _, newValue) -> {
+        visibleStructure.addListener((_, _, newValue) -> {
             if (newValue == null) {
                 view.setRoot(null);
             } else {
                 @SuppressWarnings("unchecked")
-                Archive<?, V> archive = (Archive<?, V>) newValue;
-                view.setRoot(new StructuredTreeItem<>(ArchiveStructure.of(archive)));
+                ArchiveStructure<V> structure = (ArchiveStructure<V>) newValue;
+                view.setRoot(new StructuredTreeItem<>(structure));
+                view.sort();
+            }
+        });
+
+        // Items are only sorted once they're loaded, instead of sorting the whole tree at once
+        view.setSortPolicy(v -> {
+            if (v.getRoot() instanceof StructuredTreeItem<ArchiveStructure<V>> root) {
+                root.sort(v.getSortOrder().isEmpty() ? null : new SortOrder<>(v.getSortOrder()));
+            }
+            return true;
+        });
+
+        detectedTypes.addListener((_, _, _) -> view.refresh());
+
+        view.getSelectionModel().selectedItemProperty().addListener((_, _, newValue) -> {
+            if (newValue != null && newValue.getValue() instanceof ArchiveStructure.File<V> file) {
+                previewAsset((PsarcAsset) file.asset);
+            } else {
+                preview.clear();
             }
         });
 
@@ -304,7 +476,7 @@ public final class AppWindow extends Application {
     private <T extends Asset<?>> List<TreeTableColumn<ArchiveStructure<T>, ?>> buildTreeTableColumns() {
         var nameColumn = new TreeTableColumn<ArchiveStructure<T>, ArchiveStructure<T>>("Name");
         nameColumn.setReorderable(false);
-        nameColumn.setSortable(false);
+        nameColumn.setComparator(ArchiveStructure.BY_NAME::compare);
         nameColumn.setCellValueFactory(features -> features.getValue().valueProperty());
         nameColumn.setCellFactory(_ -> {
             var cell = new TreeTableCell<ArchiveStructure<T>, ArchiveStructure<T>>() {
@@ -317,7 +489,11 @@ public final class AppWindow extends Application {
                         setGraphic(null);
                     } else {
                         setText(item.name);
-                        setGraphic(Fugue.getImageView(item instanceof ArchiveStructure.File ? "document" : "folder"));
+                        setGraphic(Fugue.getImageView(item instanceof ArchiveStructure.File<T> file ? getIcon(file) : "folder"));
+
+                        if (getTableRow() != null && getTableRow().getTreeItem() instanceof StructuredTreeItem<?> treeItem) {
+                            treeItem.shown();
+                        }
                     }
                 }
             };
@@ -341,7 +517,7 @@ public final class AppWindow extends Application {
 
         var sizeColumn = new TreeTableColumn<ArchiveStructure<T>, ArchiveStructure<T>>("Size");
         sizeColumn.setReorderable(false);
-        sizeColumn.setSortable(false);
+        sizeColumn.setComparator(ArchiveStructure.BY_SIZE::compare);
         sizeColumn.setMinWidth(150);
         sizeColumn.setMaxWidth(150);
         sizeColumn.setCellValueFactory(features -> features.getValue().valueProperty());
@@ -353,53 +529,159 @@ public final class AppWindow extends Application {
                 if (empty) {
                     setText(null);
                 } else {
-                    setText(item.size);
+                    setText(item.size());
+                }
+            }
+        });
+
+        var filesColumn = new TreeTableColumn<ArchiveStructure<T>, ArchiveStructure<T>>("Files");
+        filesColumn.setReorderable(false);
+        filesColumn.setComparator(ArchiveStructure.BY_FILES::compare);
+        filesColumn.setMinWidth(100);
+        filesColumn.setMaxWidth(100);
+        filesColumn.setCellValueFactory(features -> features.getValue().valueProperty());
+        filesColumn.setCellFactory(_ -> new TreeTableCell<>() {
+            @Override
+            protected void updateItem(ArchiveStructure<T> item, boolean empty) {
+                super.updateItem(item, empty);
+
+                if (empty || !(item instanceof ArchiveStructure.Folder<T> folder)) {
+                    setText(null);
+                } else {
+                    setText(folder.count());
                 }
             }
         });
 
-        return List.of(nameColumn, sizeColumn);
+        var typeColumn = new TreeTableColumn<ArchiveStructure<T>, ArchiveStructure<T>>("Type");
+        typeColumn.setReorderable(false);
+        typeColumn.setSortable(false);
+        typeColumn.setMinWidth(150);
+        typeColumn.setMaxWidth(150);
+        typeColumn.setCellValueFactory(features -> features.getValue().valueProperty());
+        typeColumn.setCellFactory(_ -> new TreeTableCell<>() {
+            @Override
+            protected void updateItem(ArchiveStructure<T> item, boolean empty) {
+                super.updateItem(item, empty);
+
+                var type = empty || !(item instanceof ArchiveStructure.File<T> file) ? null : getContentType(file);
+                setText(type == null ? null : type.toString());
+            }
+        });
+
+        return List.of(nameColumn, sizeColumn, filesColumn, typeColumn);
+    }
+
+    private String getIcon(ArchiveStructure.File<?> file) {
+        var type = getContentType(file);
+        if (type == null) {
+            return "document";
+        }
+        return switch (type.category()) {
+            case AUDIO -> "document-music";
+            case VIDEO -> "document-film";
+            case IMAGE -> "document-image";
+            case TEXT -> "document-text";
+            case ARCHIVE -> "document-zipper";
+            case BINARY -> "document-binary";
+        };
+    }
+
+    private void previewAsset(PsarcAsset asset) {
+        var archive = this.archive.get();
+        preview.setContent(
+            asset.id().fileName(),
+            asset.uncompressedSize(),
+            archive.blockSize(),
+            (position, target) -> archive.read(asset, position, target)
+        );
     }
 
     private void startDragAndDrop(TreeTableView<?> view, PsarcAsset asset) {
-        File result;
+        Path file;
 
         try {
-            result = extractToTemporaryFile(archive.get(), asset).toFile();
+            notice.set(null);
+            var cached = cache.find(path.get(), asset);
+            if (cached.isPresent()) {
+                file = cached.get();
+            } else {
+                // A drag can't wait for the asset to be extracted, so it's extracted for the next drag instead
+                var name = asset.id().fileName();
+                extractAsset(asset, _ -> notice.set("%s is ready, drag it again to drop it".formatted(name)));
+                return;
+            }
         } catch (IOException e) {
-            log.error("Error extracting asset", e);
+            log.error("Error extracting asset for drag and drop operation", e);
             FxUtils.showExceptionDialog(stage, "Can't extract asset for drag and drop operation", e);
             return;
         }
 
-        Dragboard dragboard = view.startDragAndDrop(TransferMode.MOVE);
-        dragboard.setContent(Map.of(DataFormat.FILES, List.of(result)));
+        // The file is copied so that it stays in the cache
+        Dragboard dragboard = view.startDragAndDrop(TransferMode.COPY);
+        dragboard.setContent(Map.of(DataFormat.FILES, List.of(file.toFile())));
     }
 
     private void openInExternalApplication(PsarcAsset asset) {
-        try {
-            Desktop.getDesktop().open(extractToTemporaryFile(archive.get(), asset).toFile());
-        } catch (IOException e) {
-            log.error("Error opening asset in an external application", e);
-            FxUtils.showExceptionDialog(stage, "Can't open asset in external application", e);
-        }
+        extractAsset(asset, file -> {
+            try {
+                Desktop.getDesktop().open(file.toFile());
+            } catch (IOException e) {
+                log.error("Error opening asset in an external application", e);
+                FxUtils.showExceptionDialog(stage, "Can't open asset in external application", e);
+            }
+        });
+    }
+
+    private void extractAsset(PsarcAsset asset, Consumer<Path> consumer) {
+        // Cancels the asset that is being extracted, if any
+        notice.set(null);
+        extractor.setPath(path.get());
+        extractor.setArchive(archive.get());
+        extractor.setAsset(asset);
+        extractor.setOnSucceeded(_ -> consumer.accept(extractor.getValue()));
+        extractor.restart();
     }
 
-    private static <K extends AssetId, V extends Asset<K>> Path extractToTemporaryFile(Archive<K, V> archive, V asset) throws IOException {
-        var id = asset.id();
-        var root = Path.of(System.getProperty("java.io.tmpdir"), "psarc-dnd");
-        var path = root.resolve(id.fileName());
+    /**
+     * Compares items by the sort order of columns, keeping folders first. Comparators
+     * of equal sort orders are equal, so sorting by the same order again does nothing.
+     */
+    private static final class SortOrder<T extends Asset<?>> implements Comparator<ArchiveStructure<T>> {
+        private final List<TreeTableColumn<ArchiveStructure<T>, ?>> columns;
+        private final List<TreeTableColumn.SortType> types;
+        private final Comparator<ArchiveStructure<T>> comparator = ArchiveStructure.foldersFirst(this::compareColumns);
+
+        SortOrder(List<TreeTableColumn<ArchiveStructure<T>, ?>> columns) {
+            this.columns = List.copyOf(columns);
+            this.types = columns.stream().map(TreeTableColumn::getSortType).toList();
+        }
 
-        log.debug("Creating a temporary file {}", path);
+        @Override
+        public int compare(ArchiveStructure<T> o1, ArchiveStructure<T> o2) {
+            return comparator.compare(o1, o2);
+        }
 
-        if (Files.notExists(root)) {
-            Files.createDirectory(root);
+        private int compareColumns(ArchiveStructure<T> o1, ArchiveStructure<T> o2) {
+            for (int i = 0; i < columns.size(); i++) {
+                @SuppressWarnings("unchecked")
+                var comparator = (Comparator<ArchiveStructure<T>>) columns.get(i).getComparator();
+                int result = comparator.compare(o1, o2);
+                if (result != 0) {
+                    return types.get(i) == TreeTableColumn.SortType.DESCENDING ? -result : result;
+                }
+            }
+            return ArchiveStructure.BY_NAME.compare(o1, o2);
         }
 
-        try (var channel = Files.newByteChannel(path, WRITE, CREATE, TRUNCATE_EXISTING)) {
-            channel.write(archive.read(id));
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SortOrder<?> that && columns.equals(that.columns) && types.equals(that.types);
         }
 
-        return path;
+        @Override
+        public int hashCode() {
+            return 31 * columns.hashCode() + types.hashCode();
+        }
     }
 }
@@ -4,44 +4,71 @@ import sh.adelessfox.psarc.archive.Archive;
 import sh.adelessfox.psarc.archive.Asset;
 import sh.adelessfox.psarc.ui.TreeStructure;
 import sh.adelessfox.psarc.util.FilePath;
+import sh.adelessfox.psarc.util.PathTree;
 import wtf.reversed.toolbox.type.FileCount;
 import wtf.reversed.toolbox.type.FileSize;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 sealed abstract class ArchiveStructure<T extends Asset<?>> implements TreeStructure<ArchiveStructure<T>> {
-    final NavigableMap<FilePath, T> paths;
+    static final Comparator<ArchiveStructure<?>> BY_NAME = Comparator.comparing(e -> e.name);
+    static final Comparator<ArchiveStructure<?>> BY_SIZE = Comparator.comparingLong(e -> e.bytes);
+    static final Comparator<ArchiveStructure<?>> BY_FILES = Comparator.comparingInt(e -> e.files);
+
     final FilePath path;
     final String name;
-    final String size;
+    final long bytes;
+    final int files;
 
-    private ArchiveStructure(NavigableMap<FilePath, T> paths, FilePath path, String name, String size) {
-        this.paths = paths;
+    private ArchiveStructure(FilePath path, String name, long bytes, int files) {
         this.path = path;
         this.name = name;
-        this.size = size;
+        this.bytes = bytes;
+        this.files = files;
     }
 
     static <T extends Asset<?>> ArchiveStructure<T> of(Archive<?, T> archive) {
-        var paths = new TreeMap<FilePath, T>();
-        for (T asset : archive.getAll()) {
-            paths.put(asset.id().toFilePath(), asset);
-        }
-        return Folder.of(paths);
+        return of(archive.getAll(), false);
+    }
+
+    /**
+     * Creates a structure of the given assets.
+     *
+     * @param assets   the assets
+     * @param expanded whether folders are initially expanded
+     */
+    static <T extends Asset<?>> ArchiveStructure<T> of(Collection<T> assets, boolean expanded) {
+        var tree = new PathTree<T>(asset -> asset.size().toBytes());
+        for (T asset : assets) {
+            tree.put(asset.id().toFilePath(), asset);
+        }
+        return Folder.of(tree.root(), expanded);
+    }
+
+    /**
+     * Returns the displayed size. It's only formatted when asked for, as most items are never displayed.
+     */
+    String size() {
+        return FileSize.ofBytes(bytes).toString();
+    }
+
+    /**
+     * Returns a comparator that puts folders before files and compares the rest with the given comparator.
+     */
+    static <T extends Asset<?>> Comparator<ArchiveStructure<T>> foldersFirst(Comparator<? super ArchiveStructure<T>> comparator) {
+        return Comparator.<ArchiveStructure<T>>comparingInt(e -> e.hasChildren() ? 0 : 1).thenComparing(comparator);
     }
 
     static final class File<T extends Asset<?>> extends ArchiveStructure<T> {
         final T asset;
 
-        File(FilePath path, T asset, String name, String size) {
-            super(null, path, name, size);
+        File(FilePath path, T asset, String name) {
+            super(path, name, asset.size().toBytes(), 1);
             this.asset = asset;
         }
 
         static <T extends Asset<?>> File<T> of(FilePath path, T asset) {
-            return new File<>(path, asset, path.last(), asset.size().toString());
+            return new File<>(path, asset, path.last());
         }
 
         @Override
@@ -56,40 +83,40 @@ sealed abstract class ArchiveStructure<T extends Asset<?>> implements TreeStruct
     }
 
     static final class Folder<T extends Asset<?>> extends ArchiveStructure<T> {
-        Folder(NavigableMap<FilePath, T> paths, FilePath path, String name, String size) {
-            super(paths, path, name, size);
+        private final PathTree.Node<T> node;
+        private final boolean expanded;
+        private List<ArchiveStructure<T>> children;
+
+        Folder(PathTree.Node<T> node, FilePath path, String name, boolean expanded) {
+            super(path, name, node.weight(), node.count());
+            this.node = node;
+            this.expanded = expanded;
         }
 
-        static <T extends Asset<?>> Folder<T> of(NavigableMap<FilePath, T> paths, Folder<T> parent, FilePath path) {
-            var name = toDisplayName(parent, path);
-            var count = FileCount.of(collectChildren(paths, path).count());
-            var size = FileSize.ofBytes(childrenPaths(paths, path).values().stream()
-                .mapToLong(asset -> asset.size().toBytes())
-                .sum());
-            return new Folder<>(paths, path, name, "%s (%s)".formatted(size, count));
+        static <T extends Asset<?>> Folder<T> of(PathTree.Node<T> node, boolean expanded) {
+            return new Folder<>(node, node.path(), node.label().full("\u2009/\u2009"), expanded);
         }
 
-        static <T extends Asset<?>> Folder<T> of(NavigableMap<FilePath, T> paths) {
-            return new Folder<>(paths, FilePath.of(), "", "");
+        /**
+         * Returns the displayed number of files within this folder and all its subfolders.
+         */
+        String count() {
+            return FileCount.of(files).toString();
         }
 
+        /**
+         * Returns the children of this folder, folders first. They're sorted once, when first asked for.
+         */
         @Override
-        public List<? extends ArchiveStructure<T>> getChildren() {
-            var children = new HashMap<FilePath, ArchiveStructure<T>>();
-
-            collectChildren(paths, path).forEach(child -> {
-                if (child.asset() != null) {
-                    children.computeIfAbsent(child.path(), path -> File.of(path, child.asset()));
-                } else {
-                    children.computeIfAbsent(child.path(), path -> Folder.of(paths, this, path));
-                }
-            });
-
-            return children.values().stream()
-                .sorted(Comparator
-                    .comparingInt((ArchiveStructure<T> e) -> e.hasChildren() ? -1 : 1)
-                    .thenComparing((ArchiveStructure<T> e) -> e.name))
-                .toList();
+        public synchronized List<? extends ArchiveStructure<T>> getChildren() {
+            if (children == null) {
+                var children = new ArrayList<ArchiveStructure<T>>(node.folders().size() + node.files().size());
+                node.folders().forEach(child -> children.add(Folder.of(child, expanded)));
+                node.files().forEach((segment, asset) -> children.add(File.of(path.resolve(segment), asset)));
+                children.sort(foldersFirst(BY_NAME));
+                this.children = List.copyOf(children);
+            }
+            return children;
         }
 
         @Override
@@ -97,59 +124,9 @@ sealed abstract class ArchiveStructure<T extends Asset<?>> implements TreeStruct
             return true;
         }
 
-        private static String toDisplayName(Folder<?> parent, FilePath path) {
-            return path.subpath(parent.path.length()).full("\u2009/\u2009");
-        }
-
-        private static <T extends Asset<?>> NavigableMap<FilePath, T> childrenPaths(NavigableMap<FilePath, T> paths, FilePath path) {
-            return paths.subMap(path, true, path.resolve(FilePath.any()), false);
-        }
-
-        private static <T extends Asset<?>> Stream<PathWithAsset<T>> collectChildren(NavigableMap<FilePath, T> paths, FilePath path) {
-            var children = childrenPaths(paths, path);
-            return Stream.concat(
-                collectFolders(children, path),
-                collectFiles(children, path)
-            );
-        }
-
-        private static <T extends Asset<?>> Stream<PathWithAsset<T>> collectFolders(NavigableMap<FilePath, T> paths, FilePath path) {
-            return collectCommonPrefixes(paths.keySet(), path)
-                .map(p -> new PathWithAsset<>(p, null));
-        }
-
-        private static <T extends Asset<?>> Stream<PathWithAsset<T>> collectFiles(NavigableMap<FilePath, T> paths, FilePath path) {
-            return paths.entrySet().stream()
-                .filter(entry -> path.length() + 1 == entry.getKey().length())
-                .map(entry -> new PathWithAsset<>(entry.getKey(), entry.getValue()));
-        }
-
-        private static Stream<FilePath> collectCommonPrefixes(Collection<FilePath> paths, FilePath path) {
-            int offset = path.length();
-            return paths.stream()
-                .collect(Collectors.groupingBy(p -> p.get(offset)))
-                .values().stream()
-                .map(p -> getCommonPrefix(p, offset))
-                .distinct()
-                .filter(p -> !p.equals(path));
-        }
-
-        private static FilePath getCommonPrefix(List<FilePath> paths, int offset) {
-            var path = paths.getFirst();
-            int position = Math.min(offset, path.length() - 1);
-
-            for (; position < path.length() - 1; position++) {
-                for (FilePath other : paths) {
-                    if (other.length() < position || !path.get(position).equals(other.get(position))) {
-                        return path.subpath(0, position);
-                    }
-                }
-            }
-
-            return path.subpath(0, position);
-        }
-
-        private record PathWithAsset<T extends Asset<?>>(FilePath path, T asset) {
+        @Override
+        public boolean isExpanded() {
+            return expanded;
         }
     }
 }
@@ -0,0 +1,132 @@
+package sh.adelessfox.psarc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+import sh.adelessfox.psarc.util.ContentType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.SequencedSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects content types of assets in the background, reading only the start of each asset.
+ * <p>
+ * Types are detected on request by a single low-priority thread, most recent requests first,
+ * and are cached for as long as the sniffer is open. Only the most recent requests are kept,
+ * as they're made for the assets that are displayed. While the sniffer is paused, nothing is
+ * read, so it doesn't compete with reads the user is waiting for.
+ */
+final class ContentSniffer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ContentSniffer.class);
+
+    private static final int SNIFF_SIZE = 512;
+    private static final int MAX_PENDING = 256;
+
+    private final PsarcArchive archive;
+    private final Runnable listener;
+    private final Map<PsarcAsset, ContentType> types = new ConcurrentHashMap<>();
+    private final SequencedSet<PsarcAsset> pending = new LinkedHashSet<>();
+    private boolean paused;
+    private boolean closed;
+
+    /**
+     * Creates a sniffer and starts its thread.
+     *
+     * @param archive  the archive to read assets from
+     * @param listener the listener that is called from the sniffer's thread after a type is detected
+     */
+    ContentSniffer(PsarcArchive archive, Runnable listener) {
+        this.archive = archive;
+        this.listener = listener;
+
+        Thread.ofPlatform()
+            .name("content-sniffer")
+            .priority(Thread.MIN_PRIORITY)
+            .daemon()
+            .start(this::run);
+    }
+
+    /**
+     * Returns the content type of an asset, requesting it to be detected if it's not known yet.
+     *
+     * @param asset the asset
+     * @return the content type, or {@code null} if it's not known yet
+     */
+    ContentType get(PsarcAsset asset) {
+        var type = types.get(asset);
+        if (type == null) {
+            request(asset);
+        }
+        return type;
+    }
+
+    /**
+     * Pauses or resumes detection. Requests made while paused are detected once resumed.
+     */
+    synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        pending.clear();
+        notifyAll();
+    }
+
+    private synchronized void request(PsarcAsset asset) {
+        if (closed) {
+            return;
+        }
+        // Move it to the end, so it's detected next
+        pending.remove(asset);
+        pending.addLast(asset);
+        if (pending.size() > MAX_PENDING) {
+            pending.removeFirst();
+        }
+        notifyAll();
+    }
+
+    private void run() {
+        while (true) {
+            PsarcAsset asset;
+            synchronized (this) {
+                while (!closed && (paused || pending.isEmpty())) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                asset = pending.removeLast();
+            }
+            if (types.containsKey(asset)) {
+                continue;
+            }
+            types.put(asset, detect(asset));
+            listener.run();
+        }
+    }
+
+    private ContentType detect(PsarcAsset asset) {
+        // Only the first block is decompressed
+        var data = new byte[(int) Math.min(asset.uncompressedSize(), SNIFF_SIZE)];
+        try {
+            archive.read(asset, 0, ByteBuffer.wrap(data));
+        } catch (IOException e) {
+            log.warn("Error reading asset {}", asset.id().fullName(), e);
+            return new ContentType(ContentType.Format.BINARY, null);
+        }
+        return ContentType.detect(data);
+    }
+}
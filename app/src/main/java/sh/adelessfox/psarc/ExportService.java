@@ -4,18 +4,22 @@ import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
 import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+import sh.adelessfox.psarc.extract.ArchiveExtractor;
+import sh.adelessfox.psarc.extract.ExtractOption;
+import sh.adelessfox.psarc.extract.ProgressReporter;
+import sh.adelessfox.psarc.util.RateLimiter;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Objects;
 
-import static java.nio.file.StandardOpenOption.*;
-
 final class ExportService extends Service<Void> {
     private Path path;
     private PsarcArchive archive;
     private Collection<PsarcAsset> assets;
+    private RateLimiter readRateLimiter = new RateLimiter();
+    private RateLimiter writeRateLimiter = new RateLimiter();
 
     @Override
     protected Task<Void> createTask() {
@@ -38,36 +42,37 @@ final class ExportService extends Service<Void> {
         this.assets = assets;
     }
 
+    public void setReadRateLimiter(RateLimiter readRateLimiter) {
+        this.readRateLimiter = readRateLimiter;
+    }
+
+    public void setWriteRateLimiter(RateLimiter writeRateLimiter) {
+        this.writeRateLimiter = writeRateLimiter;
+    }
+
     private final class ExportTask extends Task<Void> {
         @Override
         protected Void call() throws Exception {
-            int index = 0;
-            for (PsarcAsset asset : assets) {
-                updateProgress(index, assets.size());
-                updateMessage("Extracting " + asset.id().fullName());
-                exportAsset(asset);
-                index += 1;
-            }
+            var extractor = new ArchiveExtractor(archive, path);
+            extractor.setRateLimiter(writeRateLimiter);
+            extractor.setReadRateLimiter(readRateLimiter);
 
-            updateProgress(assets.size(), assets.size());
-            updateMessage("Done");
+            updateProgress(0, assets.size());
 
-            return null;
-        }
+            var totalSize = assets.stream().mapToLong(PsarcAsset::uncompressedSize).sum();
+            var progress = new ProgressReporter(assets.size(), totalSize, Duration.ofMillis(100), value -> {
+                updateProgress(value.files(), value.totalFiles());
+                updateMessage(value.format());
+            });
 
-        private void exportAsset(PsarcAsset asset) throws Exception {
-            Thread.sleep(1);
-
-            Path target = path.resolve(asset.id().fullName());
-            if (Files.exists(target)) {
-                return;
+            try (progress) {
+                extractor.extract(assets, progress, ExtractOption.RESUME);
             }
 
-            Files.createDirectories(target.getParent());
+            updateProgress(assets.size(), assets.size());
+            updateMessage("Done");
 
-            try (var channel = Files.newByteChannel(target, WRITE, CREATE, TRUNCATE_EXISTING)) {
-                channel.write(archive.read(asset.id()));
-            }
+            return null;
         }
     }
 }
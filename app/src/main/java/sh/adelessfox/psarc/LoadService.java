@@ -0,0 +1,98 @@
+package sh.adelessfox.psarc;
+
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Opens an archive and builds its structure in the background.
+ * <p>
+ * Restarting the service cancels the archive that is being loaded. An archive whose
+ * loading was cancelled is closed as soon as it's no longer used.
+ */
+final class LoadService extends Service<LoadService.Result> {
+    private static final Logger log = LoggerFactory.getLogger(LoadService.class);
+
+    private static final int STAGES = PsarcArchive.LoadStage.values().length + 1;
+
+    private Path path;
+
+    @Override
+    protected Task<Result> createTask() {
+        Objects.requireNonNull(path, "path");
+
+        return new LoadTask(path);
+    }
+
+    public void setPath(Path path) {
+        this.path = path;
+    }
+
+    record Result(Path path, PsarcArchive archive, ArchiveStructure<PsarcAsset> structure) {
+    }
+
+    private static final class LoadTask extends Task<Result> {
+        private final Path path;
+        private final AtomicReference<PsarcArchive> archive = new AtomicReference<>();
+
+        LoadTask(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        protected Result call() throws Exception {
+            var archive = new PsarcArchive(path, stage -> {
+                updateProgress(stage.ordinal(), STAGES);
+                updateMessage(switch (stage) {
+                    case TABLE_OF_CONTENTS -> "Reading table of contents";
+                    case MANIFEST -> "Reading manifest";
+                    case INDEX -> "Indexing assets";
+                });
+            });
+
+            this.archive.set(archive);
+            if (isCancelled()) {
+                discard();
+                return null;
+            }
+
+            updateProgress(STAGES - 1, STAGES);
+            updateMessage("Building tree");
+
+            var structure = ArchiveStructure.of(archive);
+            if (isCancelled()) {
+                discard();
+                return null;
+            }
+
+            updateProgress(STAGES, STAGES);
+            return new Result(path, archive, structure);
+        }
+
+        @Override
+        protected void cancelled() {
+            // The archive may have been opened right before the task was cancelled
+            discard();
+        }
+
+        private void discard() {
+            var archive = this.archive.getAndSet(null);
+            if (archive == null) {
+                return;
+            }
+            try {
+                archive.close();
+            } catch (IOException e) {
+                log.warn("Error closing a cancelled archive", e);
+            }
+        }
+    }
+}
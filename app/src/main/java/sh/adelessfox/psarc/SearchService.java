@@ -0,0 +1,108 @@
+package sh.adelessfox.psarc;
+
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+import sh.adelessfox.psarc.util.TrigramIndex;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Builds a structure of assets whose names contain a query.
+ * <p>
+ * Names are indexed when the first query runs. If the query extends the previous one,
+ * only the previous matches are checked, so narrowing the search while typing is cheap.
+ */
+final class SearchService extends Service<SearchService.Result> {
+    private static final int EXPAND_LIMIT = 200;
+
+    private Index index;
+    private String query;
+    private Result previous;
+
+    @Override
+    protected Task<Result> createTask() {
+        Objects.requireNonNull(index, "index");
+        Objects.requireNonNull(query, "query");
+
+        return new SearchTask(index, query, previous);
+    }
+
+    @Override
+    protected void succeeded() {
+        previous = getValue();
+    }
+
+    public void setArchive(PsarcArchive archive) {
+        this.index = new Index(List.copyOf(archive.getAll()));
+        this.previous = null;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    /**
+     * The result of a search.
+     *
+     * @param query     the query
+     * @param ids       the ids of matching assets
+     * @param structure the structure of matching assets
+     */
+    record Result(String query, int[] ids, ArchiveStructure<PsarcAsset> structure) {
+    }
+
+    /**
+     * Assets of an archive and the index of their names, which is built on first use.
+     */
+    private static final class Index {
+        private final List<PsarcAsset> assets;
+        private TrigramIndex names;
+
+        Index(List<PsarcAsset> assets) {
+            this.assets = assets;
+        }
+
+        synchronized TrigramIndex names() {
+            if (names == null) {
+                names = TrigramIndex.of(assets.stream().map(asset -> asset.id().fullName()).toList());
+            }
+            return names;
+        }
+    }
+
+    private static final class SearchTask extends Task<Result> {
+        private final Index index;
+        private final String query;
+        private final Result previous;
+
+        SearchTask(Index index, String query, Result previous) {
+            this.index = index;
+            this.query = query;
+            this.previous = previous;
+        }
+
+        @Override
+        protected Result call() {
+            // A cancelled task still finishes the index so that the next query can use it
+            var names = index.names();
+            if (isCancelled()) {
+                return null;
+            }
+
+            var ids = previous != null
+                ? names.search(query, previous.query(), previous.ids())
+                : names.search(query);
+            if (isCancelled()) {
+                return null;
+            }
+
+            var assets = Arrays.stream(ids).mapToObj(index.assets::get).toList();
+            var structure = ArchiveStructure.of(assets, ids.length <= EXPAND_LIMIT);
+            return new Result(query, ids, structure);
+        }
+    }
+}
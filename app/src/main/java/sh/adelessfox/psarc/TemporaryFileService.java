@@ -0,0 +1,86 @@
+package sh.adelessfox.psarc;
+
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+import sh.adelessfox.psarc.extract.ExtractCache;
+import wtf.reversed.toolbox.type.FileSize;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Extracts an asset into an {@link ExtractCache} in the background, so that it can be opened by other applications.
+ * <p>
+ * Restarting the service cancels the asset that is being extracted.
+ */
+final class TemporaryFileService extends Service<Path> {
+    private ExtractCache cache;
+    private Path path;
+    private PsarcArchive archive;
+    private PsarcAsset asset;
+
+    @Override
+    protected Task<Path> createTask() {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(path, "path");
+        Objects.requireNonNull(archive, "archive");
+        Objects.requireNonNull(asset, "asset");
+
+        return new ExtractTask(cache, path, archive, asset);
+    }
+
+    public void setCache(ExtractCache cache) {
+        this.cache = cache;
+    }
+
+    public void setPath(Path path) {
+        this.path = path;
+    }
+
+    public void setArchive(PsarcArchive archive) {
+        this.archive = archive;
+    }
+
+    public void setAsset(PsarcAsset asset) {
+        this.asset = asset;
+    }
+
+    private static final class ExtractTask extends Task<Path> {
+        private final ExtractCache cache;
+        private final Path path;
+        private final PsarcArchive archive;
+        private final PsarcAsset asset;
+
+        ExtractTask(ExtractCache cache, Path path, PsarcArchive archive, PsarcAsset asset) {
+            this.cache = cache;
+            this.path = path;
+            this.archive = archive;
+            this.asset = asset;
+        }
+
+        @Override
+        protected Path call() throws Exception {
+            var name = asset.id().fileName();
+            var size = asset.uncompressedSize();
+
+            updateMessage("Extracting " + name);
+
+            return cache.extract(path, archive, asset, written -> {
+                if (isCancelled()) {
+                    throw new CancellationException();
+                }
+                updateProgress(written, size);
+                updateMessage("Extracting %s (%s of %s)".formatted(name, FileSize.ofBytes(written), FileSize.ofBytes(size)));
+            });
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // Interrupting a thread that reads from the archive would close the archive's channels
+            return super.cancel(false);
+        }
+    }
+}
@@ -4,64 +4,94 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sh.adelessfox.psarc.archive.Archive;
 import sh.adelessfox.psarc.util.Filenames;
+import sh.adelessfox.psarc.util.RateLimiter;
 import wtf.reversed.toolbox.compress.Decompressor;
 import wtf.reversed.toolbox.hash.HashCode;
 import wtf.reversed.toolbox.hash.HashFunction;
 import wtf.reversed.toolbox.io.BinaryReader;
 
+import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
+/**
+ * A PSARC archive.
+ * <p>
+ * The archive is safe to read from multiple threads. Reading threads must not be
+ * interrupted, as that closes the underlying file channels.
+ */
 public final class PsarcArchive implements Archive<PsarcAssetId, PsarcAsset> {
     private static final Logger log = LoggerFactory.getLogger(PsarcArchive.class);
+    private static final RateLimiter UNLIMITED = new RateLimiter();
 
-    private final BinaryReader reader;
-    private final Decompressor decompressor;
+    private final List<FileChannel> channels;
+    private final long[] offsets;
+    private final Queue<Decompressor> decompressors = new ConcurrentLinkedQueue<>();
+    private final Path oodleLibrary;
 
     private final PsarcHeader header;
     private final short[] sizes;
+    private volatile long[] blockPositions;
     private final SortedMap<PsarcAssetId, PsarcAsset> assets = new TreeMap<>();
 
     public PsarcArchive(Path path) throws IOException {
-        if (isSplit(path)) {
-            List<Path> parts = findParts(path);
-            List<BinaryReader> readers = new ArrayList<>(parts.size());
+        this(path, _ -> {});
+    }
 
-            try {
-                for (Path part : parts) {
-                    readers.add(BinaryReader.open(part));
-                }
-            } catch (IOException e) {
-                for (BinaryReader reader : readers) {
-                    reader.close();
-                }
-                throw e;
+    /**
+     * Opens an archive, reporting each stage of loading as it starts.
+     *
+     * @param path     the path to the archive, or to its first part if the archive is split
+     * @param listener the listener that is called from the current thread
+     * @throws IOException if an I/O error has occurred
+     */
+    public PsarcArchive(Path path, Consumer<LoadStage> listener) throws IOException {
+        listener.accept(LoadStage.TABLE_OF_CONTENTS);
+
+        List<Path> parts = isSplit(path) ? findParts(path) : List.of(path);
+        List<PsarcEntry> entries;
+        PsarcManifest manifest;
+
+        this.channels = openChannels(parts);
+        this.offsets = new long[parts.size() + 1];
+
+        try {
+            for (int i = 0; i < parts.size(); i++) {
+                offsets[i + 1] = offsets[i] + channels.get(i).size();
             }
 
-            this.reader = BinaryReader.of(readers).order(ByteOrder.BIG_ENDIAN);
-        } else {
-            this.reader = BinaryReader.open(path).order(ByteOrder.BIG_ENDIAN);
-        }
+            try (BinaryReader reader = openReader(parts)) {
+                this.header = PsarcHeader.read(reader);
+                entries = reader.readObjects(header.tocEntries(), PsarcEntry::read);
+                this.sizes = reader.readShorts(header.tocSize() - PsarcHeader.BYTES - PsarcEntry.BYTES * header.tocEntries() >> 1);
+            }
 
-        this.header = PsarcHeader.read(reader);
-        this.decompressor = switch (header.compression()) {
-            case ZLIB -> Decompressor.deflate(false);
-            case LZMA -> Decompressor.lzma();
-            case OODLE -> Decompressor.oodle(findOodleLibrary());
-        };
+            this.oodleLibrary = header.compression() == PsarcCompression.OODLE ? findOodleLibrary() : null;
+            this.decompressors.add(createDecompressor());
+
+            listener.accept(LoadStage.MANIFEST);
+            manifest = PsarcManifest.of(read(entries.getFirst()));
+        } catch (IOException | RuntimeException e) {
+            closeChannels(channels);
+            throw e;
+        }
 
-        var entries = reader.readObjects(header.tocEntries(), PsarcEntry::read);
-        this.sizes = reader.readShorts(header.tocSize() - PsarcHeader.BYTES - PsarcEntry.BYTES * header.tocEntries() >> 1);
+        listener.accept(LoadStage.INDEX);
 
-        var manifest = PsarcManifest.of(read(entries.getFirst()));
         var names = new HashMap<HashCode, String>();
 
         for (String name : manifest.filenames()) {
@@ -105,16 +135,299 @@ public final class PsarcArchive implements Archive<PsarcAssetId, PsarcAsset> {
         return assets.values();
     }
 
+    /**
+     * Returns all assets whose name starts with the given prefix, in the same order as {@link #getAll()}.
+     * <p>
+     * The assets are looked up by a range query, so the cost depends on the number of matching assets
+     * rather than the total number of assets in the archive.
+     *
+     * @param prefix the prefix of asset names
+     * @return a view of matching assets
+     */
+    public Collection<PsarcAsset> getAll(String prefix) {
+        if (prefix.isEmpty()) {
+            return getAll();
+        }
+        var from = transformId(PsarcAssetId.of(prefix)).name();
+        var last = from.charAt(from.length() - 1);
+        if (last == Character.MAX_VALUE) {
+            return assets.tailMap(PsarcAssetId.of(from)).values().stream()
+                .takeWhile(asset -> transformId(asset.id()).name().startsWith(from))
+                .toList();
+        }
+        var to = from.substring(0, from.length() - 1) + (char) (last + 1);
+        return assets.subMap(PsarcAssetId.of(from), PsarcAssetId.of(to)).values();
+    }
+
     @Override
     public ByteBuffer read(PsarcAssetId key) throws IOException {
         var asset = get(key).orElseThrow(FileNotFoundException::new);
-        return read(asset.uncompressedSize(), asset.blockOffset(), asset.fileOffset());
+        return read(asset);
+    }
+
+    /**
+     * Reads the whole contents of the given asset.
+     *
+     * @param asset the asset to read
+     * @return a buffer with the contents of the asset
+     * @throws IOException if an I/O error has occurred
+     */
+    public ByteBuffer read(PsarcAsset asset) throws IOException {
+        return read(asset, UNLIMITED);
+    }
+
+    /**
+     * Reads the whole contents of the given asset, subjecting reads from the archive file to a rate limiter.
+     *
+     * @param asset       the asset to read
+     * @param rateLimiter the limiter of reads from the archive file
+     * @return a buffer with the contents of the asset
+     * @throws IOException if an I/O error has occurred
+     */
+    public ByteBuffer read(PsarcAsset asset, RateLimiter rateLimiter) throws IOException {
+        return read(asset.uncompressedSize(), asset.blockOffset(), asset.fileOffset(), rateLimiter);
+    }
+
+    /**
+     * Reads a range of the contents of the given asset.
+     * <p>
+     * Only blocks that overlap the range are read and decompressed. Exactly
+     * {@code target.remaining()} bytes are read; the target's position is advanced accordingly.
+     *
+     * @param asset    the asset to read
+     * @param position the position within the uncompressed contents to start reading from
+     * @param target   the buffer to read the contents into
+     * @throws IOException if an I/O error has occurred
+     */
+    public void read(PsarcAsset asset, long position, ByteBuffer target) throws IOException {
+        read(asset, position, target, UNLIMITED);
+    }
+
+    /**
+     * Reads a range of the contents of the given asset, subjecting reads from the archive file to a rate limiter.
+     *
+     * @param asset       the asset to read
+     * @param position    the position within the uncompressed contents to start reading from
+     * @param target      the buffer to read the contents into
+     * @param rateLimiter the limiter of reads from the archive file
+     * @throws IOException if an I/O error has occurred
+     * @see #read(PsarcAsset, long, ByteBuffer)
+     */
+    public void read(PsarcAsset asset, long position, ByteBuffer target, RateLimiter rateLimiter) throws IOException {
+        var uncompressedSize = asset.uncompressedSize();
+        Objects.checkFromIndexSize(position, target.remaining(), uncompressedSize);
+
+        var blockSize = header.blockSize();
+        var index = asset.blockOffset();
+        var offset = asset.fileOffset();
+        var remaining = uncompressedSize;
+
+        // Skip blocks that precede the range
+        var skipped = (int) (position / blockSize);
+        if (skipped > 0) {
+            var positions = blockPositions();
+            offset += positions[index + skipped] - positions[index];
+            index += skipped;
+            remaining -= (long) skipped * blockSize;
+        }
+
+        byte[] input = null;
+        byte[] output = null;
+        Decompressor decompressor = null;
+        int skip = (int) (position % blockSize);
+
+        try {
+            while (target.hasRemaining()) {
+                int size = Short.toUnsignedInt(sizes[index++]);
+                int length = (int) Math.min(remaining, blockSize);
+                int count = Math.min(length - skip, target.remaining());
+
+                if (isStored(size, remaining, uncompressedSize)) {
+                    readBytes(offset + skip, target.slice(target.position(), count), rateLimiter);
+                    offset += size == 0 ? blockSize : size;
+                } else {
+                    if (decompressor == null) {
+                        input = new byte[blockSize];
+                        decompressor = acquireDecompressor();
+                    }
+
+                    readBytes(offset, input, 0, size, rateLimiter);
+
+                    if (skip == 0 && count == length && target.hasArray()) {
+                        decompressor.decompress(input, 0, size, target.array(), target.arrayOffset() + target.position(), length);
+                    } else {
+                        if (output == null) {
+                            output = new byte[blockSize];
+                        }
+                        decompressor.decompress(input, 0, size, output, 0, length);
+                        target.put(target.position(), output, skip, count);
+                    }
+
+                    offset += size;
+                }
+
+                target.position(target.position() + count);
+                remaining -= length;
+                skip = 0;
+            }
+        } finally {
+            if (decompressor != null) {
+                decompressors.offer(decompressor);
+            }
+        }
+    }
+
+    /**
+     * Transfers the whole contents of the given asset to a channel.
+     * <p>
+     * Runs of blocks that are stored without compression are transferred straight from the
+     * archive file using {@link FileChannel#transferTo}, which lets the operating system copy
+     * them without passing through the user space. Compressed blocks are decompressed one at a time.
+     *
+     * @param asset  the asset to transfer
+     * @param target the channel to write the contents to
+     * @throws IOException if an I/O error has occurred
+     */
+    public void transferTo(PsarcAsset asset, WritableByteChannel target) throws IOException {
+        transferTo(asset, target, UNLIMITED);
+    }
+
+    /**
+     * Transfers the contents of the given asset, subjecting reads from the archive file to a rate limiter.
+     *
+     * @param asset       the asset to transfer
+     * @param target      the channel to write the contents to
+     * @param rateLimiter the limiter of reads from the archive file
+     * @throws IOException if an I/O error has occurred
+     * @see #transferTo(PsarcAsset, WritableByteChannel)
+     */
+    public void transferTo(PsarcAsset asset, WritableByteChannel target, RateLimiter rateLimiter) throws IOException {
+        var uncompressedSize = asset.uncompressedSize();
+        var index = asset.blockOffset();
+        var position = asset.fileOffset();
+        var remaining = uncompressedSize;
+
+        long runPosition = position;
+        long runLength = 0;
+
+        byte[] input = null;
+        byte[] output = null;
+        Decompressor decompressor = null;
+
+        try {
+            while (remaining > 0) {
+                int size = Short.toUnsignedInt(sizes[index++]);
+                if (isStored(size, remaining, uncompressedSize)) {
+                    int length = size == 0 ? (int) Math.min(remaining, header.blockSize()) : size;
+                    if (runLength == 0) {
+                        runPosition = position;
+                    }
+                    runLength += length;
+                    position += length;
+                    remaining -= length;
+                } else {
+                    transferBytes(runPosition, runLength, target, rateLimiter);
+                    runLength = 0;
+
+                    if (decompressor == null) {
+                        input = new byte[header.blockSize()];
+                        output = new byte[header.blockSize()];
+                        decompressor = acquireDecompressor();
+                    }
+
+                    int length = (int) Math.min(remaining, header.blockSize());
+                    readBytes(position, input, 0, size, rateLimiter);
+                    decompressor.decompress(input, 0, size, output, 0, length);
+                    writeBytes(target, ByteBuffer.wrap(output, 0, length));
+                    position += size;
+                    remaining -= length;
+                }
+            }
+
+            transferBytes(runPosition, runLength, target, rateLimiter);
+        } finally {
+            if (decompressor != null) {
+                decompressors.offer(decompressor);
+            }
+        }
+    }
+
+    /**
+     * Checks whether all blocks of the given asset are stored without compression.
+     *
+     * @param asset the asset to check
+     * @return {@code true} if the asset can be copied as is
+     */
+    public boolean isStored(PsarcAsset asset) {
+        var uncompressedSize = asset.uncompressedSize();
+        var index = asset.blockOffset();
+        var remaining = uncompressedSize;
+
+        while (remaining > 0) {
+            int size = Short.toUnsignedInt(sizes[index++]);
+            if (!isStored(size, remaining, uncompressedSize)) {
+                return false;
+            }
+            remaining -= size == 0 ? header.blockSize() : size;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes the blocks of the given asset take up in the archive file.
+     *
+     * @param asset the asset
+     * @return the compressed size of the asset
+     */
+    public long compressedSize(PsarcAsset asset) {
+        var blocks = Math.toIntExact((asset.uncompressedSize() + header.blockSize() - 1) / header.blockSize());
+        var positions = blockPositions();
+        return positions[asset.blockOffset() + blocks] - positions[asset.blockOffset()];
+    }
+
+    /**
+     * Computes a checksum of the data of the given asset as it's stored in the archive file.
+     * <p>
+     * Blocks are checksummed as they are, without decompressing them, so assets with equal
+     * checksums have equal contents, barring a collision.
+     *
+     * @param asset       the asset
+     * @param rateLimiter the limiter of reads from the archive file
+     * @return the CRC-32C checksum of the asset's blocks
+     * @throws IOException if an I/O error has occurred
+     */
+    public long checksum(PsarcAsset asset, RateLimiter rateLimiter) throws IOException {
+        var checksum = new CRC32C();
+        var buffer = ByteBuffer.allocate(header.blockSize());
+        var position = asset.fileOffset();
+        var remaining = compressedSize(asset);
+
+        while (remaining > 0) {
+            int length = (int) Math.min(remaining, buffer.capacity());
+            readBytes(position, buffer.clear().limit(length), rateLimiter);
+            checksum.update(buffer.flip());
+            position += length;
+            remaining -= length;
+        }
+
+        return checksum.getValue();
+    }
+
+    /**
+     * Returns the size of blocks that contents of assets are split into. Reading a range
+     * that is aligned to blocks doesn't decompress any data outside the range.
+     */
+    public int blockSize() {
+        return header.blockSize();
     }
 
     @Override
     public void close() throws IOException {
-        reader.close();
-        decompressor.close();
+        closeChannels(channels);
+        for (Decompressor decompressor; (decompressor = decompressors.poll()) != null; ) {
+            decompressor.close();
+        }
     }
 
     private PsarcAssetId transformId(PsarcAssetId id) {
@@ -122,34 +435,166 @@ public final class PsarcArchive implements Archive<PsarcAssetId, PsarcAsset> {
     }
 
     private ByteBuffer read(PsarcEntry entry) throws IOException {
-        return read(entry.uncompressedSize(), entry.blockOffset(), entry.fileOffset());
+        return read(entry.uncompressedSize(), entry.blockOffset(), entry.fileOffset(), UNLIMITED);
     }
 
-    private ByteBuffer read(long uncompressedSize, int index, long blockOffset) throws IOException {
+    private ByteBuffer read(long uncompressedSize, int index, long blockOffset, RateLimiter rateLimiter) throws IOException {
         var output = ByteBuffer.allocate(Math.toIntExact(uncompressedSize));
         var buffer = new byte[header.blockSize()];
+        var decompressor = acquireDecompressor();
 
-        reader.position(blockOffset);
-
-        while (output.hasRemaining()) {
-            int size = Short.toUnsignedInt(sizes[index++]);
-            if (size == 0) {
-                reader.readBytes(output.array(), output.position(), header.blockSize());
-                output.position(output.position() + header.blockSize());
-            } else if (size == uncompressedSize || size == output.remaining()) {
-                reader.readBytes(output.array(), output.position(), size);
-                output.position(output.position() + size);
-            } else {
-                int length = Math.min(output.remaining(), header.blockSize());
-                reader.readBytes(buffer, 0, size);
-                decompressor.decompress(buffer, 0, size, output.array(), output.position(), length);
-                output.position(output.position() + length);
+        try {
+            long position = blockOffset;
+            while (output.hasRemaining()) {
+                int size = Short.toUnsignedInt(sizes[index++]);
+                if (size == 0) {
+                    readBytes(position, output.array(), output.position(), header.blockSize(), rateLimiter);
+                    output.position(output.position() + header.blockSize());
+                    position += header.blockSize();
+                } else if (isStored(size, output.remaining(), uncompressedSize)) {
+                    readBytes(position, output.array(), output.position(), size, rateLimiter);
+                    output.position(output.position() + size);
+                    position += size;
+                } else {
+                    int length = Math.min(output.remaining(), header.blockSize());
+                    readBytes(position, buffer, 0, size, rateLimiter);
+                    decompressor.decompress(buffer, 0, size, output.array(), output.position(), length);
+                    output.position(output.position() + length);
+                    position += size;
+                }
             }
+        } finally {
+            decompressors.offer(decompressor);
         }
 
         return output.position(0);
     }
 
+    private void readBytes(long position, byte[] dst, int offset, int length, RateLimiter rateLimiter) throws IOException {
+        readBytes(position, ByteBuffer.wrap(dst, offset, length), rateLimiter);
+    }
+
+    private void readBytes(long position, ByteBuffer buffer, RateLimiter rateLimiter) throws IOException {
+        rateLimiter.acquire(buffer.remaining());
+        while (buffer.hasRemaining()) {
+            int part = findPart(position);
+            int limit = (int) Math.min(buffer.remaining(), offsets[part + 1] - position);
+            int read = channels.get(part).read(buffer.slice(buffer.position(), limit), position - offsets[part]);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            buffer.position(buffer.position() + read);
+            position += read;
+        }
+    }
+
+    private void transferBytes(long position, long count, WritableByteChannel target, RateLimiter rateLimiter) throws IOException {
+        while (count > 0) {
+            int part = findPart(position);
+            long limit = Math.min(count, offsets[part + 1] - position);
+            if (rateLimiter.isLimited()) {
+                limit = Math.min(limit, RateLimiter.CHUNK_SIZE);
+                rateLimiter.acquire(limit);
+            }
+            long transferred = channels.get(part).transferTo(position - offsets[part], limit, target);
+            if (transferred <= 0) {
+                throw new EOFException();
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private static void writeBytes(WritableByteChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static boolean isStored(int size, long remaining, long uncompressedSize) {
+        // A full block is stored as zero
+        return size == 0 || size == uncompressedSize || size == remaining;
+    }
+
+    /**
+     * Returns the positions of blocks relative to the first block, computed on first use.
+     */
+    private long[] blockPositions() {
+        var positions = blockPositions;
+        if (positions == null) {
+            var blockSize = header.blockSize();
+            positions = new long[sizes.length + 1];
+            for (int i = 0; i < sizes.length; i++) {
+                int size = Short.toUnsignedInt(sizes[i]);
+                positions[i + 1] = positions[i] + (size == 0 ? blockSize : size);
+            }
+            blockPositions = positions;
+        }
+        return positions;
+    }
+
+    private int findPart(long position) throws EOFException {
+        int index = Arrays.binarySearch(offsets, position);
+        int part = index >= 0 ? index : -index - 2;
+        if (part < 0 || part >= channels.size()) {
+            throw new EOFException();
+        }
+        return part;
+    }
+
+    private Decompressor acquireDecompressor() throws IOException {
+        var decompressor = decompressors.poll();
+        return decompressor != null ? decompressor : createDecompressor();
+    }
+
+    private Decompressor createDecompressor() throws IOException {
+        return switch (header.compression()) {
+            case ZLIB -> Decompressor.deflate(false);
+            case LZMA -> Decompressor.lzma();
+            case OODLE -> Decompressor.oodle(oodleLibrary);
+        };
+    }
+
+    private static List<FileChannel> openChannels(List<Path> parts) throws IOException {
+        List<FileChannel> channels = new ArrayList<>(parts.size());
+        try {
+            for (Path part : parts) {
+                channels.add(FileChannel.open(part, StandardOpenOption.READ));
+            }
+        } catch (IOException e) {
+            closeChannels(channels);
+            throw e;
+        }
+        return List.copyOf(channels);
+    }
+
+    private static void closeChannels(List<FileChannel> channels) throws IOException {
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    private static BinaryReader openReader(List<Path> parts) throws IOException {
+        if (parts.size() == 1) {
+            return BinaryReader.open(parts.getFirst()).order(ByteOrder.BIG_ENDIAN);
+        }
+
+        List<BinaryReader> readers = new ArrayList<>(parts.size());
+
+        try {
+            for (Path part : parts) {
+                readers.add(BinaryReader.open(part));
+            }
+        } catch (IOException e) {
+            for (BinaryReader reader : readers) {
+                reader.close();
+            }
+            throw e;
+        }
+
+        return BinaryReader.of(readers).order(ByteOrder.BIG_ENDIAN);
+    }
+
     private static boolean isSplit(Path path) {
         return Filenames.getExtension(path).matches("[0-9]+");
     }
@@ -177,4 +622,22 @@ public final class PsarcArchive implements Archive<PsarcAssetId, PsarcAsset> {
                 .orElseThrow(() -> new FileNotFoundException("Couldn't find a suitable Oodle library file. Please obtain oo2core_X_win64.dll and put it in " + root.toAbsolutePath()));
         }
     }
+
+    /**
+     * The stages of loading an archive, in order.
+     */
+    public enum LoadStage {
+        /**
+         * Reading the header and the table of contents.
+         */
+        TABLE_OF_CONTENTS,
+        /**
+         * Reading the names of assets.
+         */
+        MANIFEST,
+        /**
+         * Matching assets with their names.
+         */
+        INDEX
+    }
 }
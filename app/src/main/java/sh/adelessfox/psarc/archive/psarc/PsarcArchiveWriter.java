@@ -3,17 +3,10 @@ package sh.adelessfox.psarc.archive.psarc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sh.adelessfox.psarc.archive.ArchiveWriter;
-import wtf.reversed.toolbox.collect.Bytes;
-import wtf.reversed.toolbox.collect.MutableBytes;
-import wtf.reversed.toolbox.hash.HashFunction;
 
-import java.io.EOFException;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.util.*;
@@ -28,37 +21,52 @@ public final class PsarcArchiveWriter implements ArchiveWriter<PsarcAssetId> {
     public enum PsarcAssetOption implements AssetOption {
         /**
          * Asset will be stored without any compression.
+         * <p>
+         * The first block of such asset is placed at the alignment
+         * boundary specified when constructing the writer.
          */
         NO_COMPRESS
     }
 
     private static final Logger log = LoggerFactory.getLogger(PsarcArchiveWriter.class);
 
-    private static final short VERSION_MAJOR = 1;
-    private static final short VERSION_MINOR = 4;
-    private static final int BLOCK_SIZE = 65536;
+    /**
+     * The alignment that is suitable for memory-mapping stored assets.
+     */
+    public static final int PAGE_ALIGNMENT = 4096;
 
     private final SortedMap<PsarcAssetId, AssetInfo> assets = new TreeMap<>();
     private final PsarcCompression compression;
     private final boolean absolute;
     private final boolean ignoreCase;
+    private final int alignment;
 
     public PsarcArchiveWriter(PsarcCompression compression, boolean absolute, boolean ignoreCase) {
+        this(compression, absolute, ignoreCase, 1);
+    }
+
+    /**
+     * Creates a new writer.
+     *
+     * @param compression the compression used by the archive
+     * @param absolute    whether asset names are stored as absolute paths
+     * @param ignoreCase  whether asset names are case-insensitive
+     * @param alignment   the boundary the first block of each uncompressed asset is aligned to;
+     *                    must be a power of two, {@code 1} disables alignment
+     */
+    public PsarcArchiveWriter(PsarcCompression compression, boolean absolute, boolean ignoreCase, int alignment) {
+        if (alignment <= 0 || Integer.bitCount(alignment) != 1) {
+            throw new IllegalArgumentException("alignment must be a power of two, was " + alignment);
+        }
         this.compression = compression;
         this.absolute = absolute;
         this.ignoreCase = ignoreCase;
+        this.alignment = alignment;
     }
 
     @Override
     public void add(PsarcAssetId id, AssetSource source, AssetOption... options) {
-        boolean compress = true;
-        for (AssetOption option : options) {
-            if (option == PsarcAssetOption.NO_COMPRESS) {
-                compress = false;
-                break;
-            }
-        }
-
+        var compress = isCompressed(options);
         var name = computeName(id);
         var info = new AssetInfo(name, source, compress);
 
@@ -81,7 +89,7 @@ public final class PsarcArchiveWriter implements ArchiveWriter<PsarcAssetId> {
 
     @Override
     public void write(Path path, OpenOption... options) throws IOException {
-        try (SeekableByteChannel channel = Files.newByteChannel(path, options)) {
+        try (FileChannel channel = FileChannel.open(path, options)) {
             var manifest = AssetSources.ofByteBuffer(buildManifest().asByteBuffer());
 
             int manifestBlocks = computeSizeInBlocks(manifest);
@@ -89,42 +97,63 @@ public final class PsarcArchiveWriter implements ArchiveWriter<PsarcAssetId> {
                 .mapToInt(asset -> computeSizeInBlocks(asset.source()))
                 .sum();
             int totalBlocks = manifestBlocks + assetsBlocks;
-
-            int tocHeaderSize = PsarcHeader.BYTES;
-            int tocEntriesSize = PsarcEntry.BYTES * (assets.size() + 1);
-            int tocBlocksSize = totalBlocks * Short.BYTES;
-            int tocSize = tocHeaderSize + tocEntriesSize + tocBlocksSize;
+            int tocSize = PsarcBlockWriter.computeTocSize(assets.size() + 1, totalBlocks);
 
             // Write data
-            channel.position(tocSize);
-
+            var writer = new PsarcBlockWriter(channel, tocSize, alignment);
             var tocEntries = new ArrayList<PsarcEntry>();
-            var tocBlockBuffer = ByteBuffer.allocate(BLOCK_SIZE);
-            var tocBlockSizesBuffer = ByteBuffer.allocate(tocBlocksSize);
-            var tocBlockSizesShortBuffer = tocBlockSizesBuffer.asShortBuffer();
 
             // Write manifest
-            tocEntries.add(writeAsset(channel, null, manifest, tocBlockBuffer, tocBlockSizesShortBuffer, true));
+            tocEntries.add(writeAsset(writer, null, manifest, true));
 
             // Write assets
             for (var entry : assets.entrySet()) {
                 var id = entry.getKey();
                 var info = entry.getValue();
 
-                tocEntries.add(writeAsset(
-                    channel,
-                    id,
-                    info.source(),
-                    tocBlockBuffer,
-                    tocBlockSizesShortBuffer,
-                    info.compressed()
-                ));
+                tocEntries.add(writeAsset(writer, id, info.source(), info.compressed()));
+            }
+
+            writer.flush();
+
+            if (writer.blockCount() != totalBlocks) {
+                throw new IOException("Asset sources were modified while writing");
             }
 
             // Write toc
-            channel.position(0);
-            writeToc(channel, tocEntries, tocSize, tocBlockSizesBuffer);
+            var output = new PsarcOutput(channel, 0);
+            output.write(writer.buildToc(compression, tocEntries));
+            output.flush();
+        }
+    }
+
+    /**
+     * Predicts the archive that would be produced if assets that aren't marked with
+     * {@link PsarcAssetOption#NO_COMPRESS} were compressed at the given level.
+     * <p>
+     * {@link #write} doesn't compress blocks yet, so the prediction describes a hypothetical
+     * layout rather than the archive that is written. Level {@code 0} stores every block as is,
+     * which is what {@link #write} currently produces.
+     * <p>
+     * A few blocks of each asset are read and compressed in parallel; the results
+     * are extrapolated to the whole asset.
+     *
+     * @param level the compression level, from {@code 0} to {@code 9}
+     * @return the prediction
+     * @throws IOException                   if an I/O error has occurred
+     * @throws UnsupportedOperationException if the compression can't be estimated
+     */
+    public PsarcEstimate estimateCompressed(int level) throws IOException {
+        var estimator = new PsarcEstimator(compression, level, alignment);
+        var manifest = AssetSources.ofByteBuffer(buildManifest().asByteBuffer());
+        var inputs = new ArrayList<PsarcEstimator.Input>(assets.size() + 1);
+
+        inputs.add(new PsarcEstimator.Input(null, manifest, true));
+        for (var entry : assets.entrySet()) {
+            inputs.add(new PsarcEstimator.Input(entry.getKey(), entry.getValue().source(), entry.getValue().compressed()));
         }
+
+        return estimator.estimate(inputs);
     }
 
     @Override
@@ -133,96 +162,25 @@ public final class PsarcArchiveWriter implements ArchiveWriter<PsarcAssetId> {
     }
 
     private PsarcEntry writeAsset(
-        SeekableByteChannel channel,
+        PsarcBlockWriter writer,
         PsarcAssetId id,
         AssetSource source,
-        ByteBuffer block,
-        ShortBuffer sizes,
         boolean compress
     ) throws IOException {
         log.debug("Writing {} ({} bytes)", id != null ? id : "manifest", source.size());
 
-        var firstBlock = sizes.position();
-        var start = channel.position();
-        var size = source.size();
-
-        try (ReadableByteChannel src = source.open()) {
-            long transferred = 0;
-            while (transferred < size) {
-                long read = src.read(block);
-                if (read < 0) {
-                    throw new EOFException();
-                }
-                transferred += read;
-                if (block.remaining() == 0) {
-                    writeAssetBlock(channel, block, sizes, compress);
-                }
-            }
-            writeAssetBlock(channel, block, sizes, compress);
-        }
-
-        // TODO: absolute/relative/case-insensitive flags
-        Bytes hash;
-        if (id != null) {
-            hash = HashFunction.md5().hash(id.name()).asBytes();
-        } else {
-            hash = MutableBytes.allocate(16);
-        }
-
-        return new PsarcEntry(hash, firstBlock, size, start);
-    }
-
-    private void writeAssetBlock(
-        SeekableByteChannel channel,
-        ByteBuffer block,
-        ShortBuffer sizes,
-        boolean compress
-    ) throws IOException {
-        // TODO: actually compress
-        int position = block.position();
-        if (position > 0) {
-            block.flip();
-            write(channel, block);
-            block.clear();
-            sizes.put((short) position);
-        }
-    }
-
-    private void writeToc(
-        SeekableByteChannel channel,
-        List<PsarcEntry> entries,
-        int tocSize,
-        ByteBuffer tocBlocks
-    ) throws IOException {
-        var header = new PsarcHeader(
-            PsarcHeader.PSAR,
-            VERSION_MAJOR,
-            VERSION_MINOR,
-            compression,
-            tocSize,
-            PsarcEntry.BYTES,
-            entries.size(),
-            BLOCK_SIZE,
-            PsarcHeader.FLAGS_ABSOLUTE
-        );
-
-        // Write header
-        write(channel, header.toByteBuffer());
-
-        // Write toc entries
-        for (PsarcEntry entry : entries) {
-            write(channel, entry.toByteBuffer());
+        try (ReadableByteChannel channel = source.open()) {
+            return writer.write(PsarcBlockWriter.computeHash(id), channel, source.size(), compress);
         }
-
-        // Write block sizes
-        write(channel, tocBlocks);
     }
 
-    private void write(SeekableByteChannel channel, ByteBuffer buffer) throws IOException {
-        int remaining = buffer.remaining();
-        if (channel.write(buffer) != remaining) {
-            throw new IOException("Failed to write to the channel");
+    static boolean isCompressed(AssetOption... options) {
+        for (AssetOption option : options) {
+            if (option == PsarcAssetOption.NO_COMPRESS) {
+                return false;
+            }
         }
+        return true;
     }
 
     private PsarcManifest buildManifest() {
@@ -244,7 +202,7 @@ public final class PsarcArchiveWriter implements ArchiveWriter<PsarcAssetId> {
     }
 
     private int computeSizeInBlocks(AssetSource source) {
-        return Math.toIntExact((source.size() + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        return PsarcBlockWriter.computeSizeInBlocks(source.size());
     }
 
     private record AssetInfo(String name, AssetSource source, boolean compressed) {
@@ -13,6 +13,11 @@ public record PsarcAssetId(String name) implements AssetId {
         return name;
     }
 
+    @Override
+    public String fileName() {
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
     @Override
     public FilePath toFilePath() {
         return FilePath.of(name, "/");
@@ -0,0 +1,170 @@
+package sh.adelessfox.psarc.archive.psarc;
+
+import wtf.reversed.toolbox.collect.Bytes;
+import wtf.reversed.toolbox.collect.MutableBytes;
+import wtf.reversed.toolbox.hash.HashFunction;
+
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes asset data split into blocks and keeps track of their sizes.
+ */
+final class PsarcBlockWriter implements Flushable {
+    static final short VERSION_MAJOR = 1;
+    static final short VERSION_MINOR = 4;
+    static final int BLOCK_SIZE = 65536;
+
+    private final PsarcOutput output;
+    private final int alignment;
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    private short[] sizes = new short[1024];
+    private int count;
+
+    PsarcBlockWriter(FileChannel channel, long position, int alignment) {
+        this.output = new PsarcOutput(channel, position);
+        this.alignment = alignment;
+    }
+
+    /**
+     * Writes data of a single asset.
+     *
+     * @param hash     the hash of the asset's name
+     * @param src      the channel to read data from
+     * @param size     the size of the data, or {@code -1} to read until the end of the channel
+     * @param compress whether the data should be compressed
+     * @return the toc entry for the written asset
+     * @throws IOException if an I/O error has occurred
+     */
+    PsarcEntry write(Bytes hash, ReadableByteChannel src, long size, boolean compress) throws IOException {
+        if (!compress && alignment > 1) {
+            output.pad(alignment);
+        }
+
+        var firstBlock = count;
+        var start = output.position();
+
+        long length;
+        if (!compress && size >= 0 && src instanceof FileChannel file) {
+            // Stored data can be copied as is, possibly without passing through the user space
+            output.transferFrom(file, size);
+            putStoredBlockSizes(size);
+            length = size;
+        } else {
+            length = writeBlocks(src, size, compress);
+        }
+
+        return new PsarcEntry(hash, firstBlock, length, start);
+    }
+
+    /**
+     * Assembles the header, the toc entries, and the block sizes into a single buffer.
+     *
+     * @param compression the compression of the archive
+     * @param entries     toc entries, including the manifest
+     * @return a buffer containing the whole toc
+     */
+    ByteBuffer buildToc(PsarcCompression compression, List<PsarcEntry> entries) {
+        int tocSize = computeTocSize(entries.size(), count);
+        var header = new PsarcHeader(
+            PsarcHeader.PSAR,
+            VERSION_MAJOR,
+            VERSION_MINOR,
+            compression,
+            tocSize,
+            PsarcEntry.BYTES,
+            entries.size(),
+            BLOCK_SIZE,
+            PsarcHeader.FLAGS_ABSOLUTE
+        );
+
+        var toc = ByteBuffer.allocate(tocSize);
+        header.put(toc);
+        for (PsarcEntry entry : entries) {
+            entry.put(toc);
+        }
+        toc.asShortBuffer().put(sizes, 0, count);
+        toc.position(tocSize);
+
+        return toc.flip();
+    }
+
+    /**
+     * Returns the number of blocks written so far.
+     */
+    int blockCount() {
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    static int computeTocSize(int entries, int blocks) {
+        return PsarcHeader.BYTES + PsarcEntry.BYTES * entries + Short.BYTES * blocks;
+    }
+
+    static int computeSizeInBlocks(long size) {
+        return Math.toIntExact((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    static Bytes computeHash(PsarcAssetId id) {
+        // TODO: absolute/relative/case-insensitive flags
+        if (id != null) {
+            return HashFunction.md5().hash(id.name()).asBytes();
+        } else {
+            return MutableBytes.allocate(16);
+        }
+    }
+
+    private long writeBlocks(ReadableByteChannel src, long size, boolean compress) throws IOException {
+        long transferred = 0;
+        while (size < 0 || transferred < size) {
+            long read = src.read(block);
+            if (read < 0) {
+                if (size < 0) {
+                    break;
+                }
+                throw new EOFException();
+            }
+            transferred += read;
+            if (block.remaining() == 0) {
+                writeBlock(compress);
+            }
+        }
+        writeBlock(compress);
+        return transferred;
+    }
+
+    private void writeBlock(boolean compress) throws IOException {
+        // TODO: actually compress
+        int position = block.position();
+        if (position > 0) {
+            block.flip();
+            output.write(block);
+            block.clear();
+            putBlockSize(position);
+        }
+    }
+
+    private void putStoredBlockSizes(long size) {
+        for (long remaining = size; remaining > 0; remaining -= BLOCK_SIZE) {
+            putBlockSize((int) Math.min(remaining, BLOCK_SIZE));
+        }
+    }
+
+    private void putBlockSize(int size) {
+        if (count == sizes.length) {
+            sizes = Arrays.copyOf(sizes, count * 2);
+        }
+        // A full block is stored as zero
+        sizes[count++] = (short) size;
+    }
+}
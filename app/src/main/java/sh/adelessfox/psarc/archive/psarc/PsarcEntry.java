@@ -24,11 +24,14 @@ public record PsarcEntry(
     }
 
     public ByteBuffer toByteBuffer() {
-        return ByteBuffer.allocate(BYTES)
+        return put(ByteBuffer.allocate(BYTES)).flip();
+    }
+
+    public ByteBuffer put(ByteBuffer buffer) {
+        return buffer
             .put(hash.asBuffer())
             .putInt(blockOffset)
             .putInt((int) (uncompressedSize >>> 8)).put((byte) uncompressedSize)
-            .putInt((int) (fileOffset >>> 8)).put((byte) fileOffset)
-            .flip();
+            .putInt((int) (fileOffset >>> 8)).put((byte) fileOffset);
     }
 }
@@ -0,0 +1,46 @@
+package sh.adelessfox.psarc.archive.psarc;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * A prediction of an archive produced by {@link PsarcArchiveWriter#estimateCompressed(int)}.
+ *
+ * @param archiveSize      the predicted size of the archive file, in bytes
+ * @param uncompressedSize the total size of all assets, in bytes
+ * @param extensions       the predicted compression of assets grouped by their file extension
+ * @param compressionTime  the predicted time spent compressing the data, not including disk I/O
+ */
+public record PsarcEstimate(
+    long archiveSize,
+    long uncompressedSize,
+    Map<String, Ratio> extensions,
+    Duration compressionTime
+) {
+    public PsarcEstimate {
+        extensions = Map.copyOf(extensions);
+    }
+
+    /**
+     * Returns the predicted ratio of the archive size to the total size of all assets.
+     */
+    public double ratio() {
+        return uncompressedSize == 0 ? 1.0 : (double) archiveSize / uncompressedSize;
+    }
+
+    /**
+     * The predicted compression of a group of assets.
+     *
+     * @param uncompressedSize the total size of assets, in bytes
+     * @param compressedSize   the predicted size of assets after compression, in bytes
+     */
+    public record Ratio(long uncompressedSize, long compressedSize) {
+        public double ratio() {
+            return uncompressedSize == 0 ? 1.0 : (double) compressedSize / uncompressedSize;
+        }
+
+        Ratio add(Ratio other) {
+            return new Ratio(uncompressedSize + other.uncompressedSize, compressedSize + other.compressedSize);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package sh.adelessfox.psarc.archive.psarc;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.LZMAOutputStream;
+import sh.adelessfox.psarc.archive.ArchiveWriter.AssetSource;
+import sh.adelessfox.psarc.archive.psarc.PsarcEstimate.Ratio;
+import sh.adelessfox.psarc.util.Filenames;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import static sh.adelessfox.psarc.archive.psarc.PsarcBlockWriter.BLOCK_SIZE;
+
+/**
+ * Predicts the size of an archive by compressing a few sampled blocks of each asset.
+ */
+final class PsarcEstimator {
+    private static final int SAMPLES_PER_ASSET = 4;
+
+    private final PsarcCompression compression;
+    private final int level;
+    private final int alignment;
+
+    PsarcEstimator(PsarcCompression compression, int level, int alignment) {
+        if (compression == PsarcCompression.OODLE) {
+            throw new UnsupportedOperationException("Estimating " + compression + " compression is not supported");
+        }
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("level must be between 0 and 9, was " + level);
+        }
+        this.compression = compression;
+        this.level = level;
+        this.alignment = alignment;
+    }
+
+    PsarcEstimate estimate(List<Input> inputs) throws IOException {
+        var samples = sample(inputs);
+        var extensions = new HashMap<String, Ratio>();
+
+        long uncompressedSize = 0;
+        long dataSize = 0;
+        long compressionTime = 0;
+        int blocks = 0;
+
+        for (int i = 0; i < inputs.size(); i++) {
+            var input = inputs.get(i);
+            var sample = samples.get(i);
+            var size = input.source().size();
+            var compressedSize = sample.extrapolate(sample.compressedSize(), size);
+
+            if (!input.compressed() && alignment > 1) {
+                // On average, half of the alignment is spent on padding
+                dataSize += alignment / 2;
+            }
+
+            if (input.id() != null) {
+                var extension = Filenames.getExtension(input.id().name()).toLowerCase(Locale.ROOT);
+                extensions.merge(extension, new Ratio(size, compressedSize), Ratio::add);
+            }
+
+            uncompressedSize += size;
+            dataSize += compressedSize;
+            compressionTime += sample.extrapolate(sample.nanos(), size);
+            blocks += PsarcBlockWriter.computeSizeInBlocks(size);
+        }
+
+        return new PsarcEstimate(
+            PsarcBlockWriter.computeTocSize(inputs.size(), blocks) + dataSize,
+            uncompressedSize,
+            extensions,
+            Duration.ofNanos(compressionTime)
+        );
+    }
+
+    private List<Sample> sample(List<Input> inputs) throws IOException {
+        try (var executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+            var futures = new ArrayList<Future<Sample>>(inputs.size());
+            for (Input input : inputs) {
+                futures.add(executor.submit(() -> sample(input)));
+            }
+
+            var samples = new ArrayList<Sample>(inputs.size());
+            for (Future<Sample> future : futures) {
+                samples.add(future.get());
+            }
+
+            return samples;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private Sample sample(Input input) throws IOException {
+        var size = input.source().size();
+        if (!input.compressed() || size == 0) {
+            return new Sample(size, size, 0);
+        }
+
+        var block = new byte[BLOCK_SIZE];
+        var blocks = PsarcBlockWriter.computeSizeInBlocks(size);
+        var samples = Math.min(blocks, SAMPLES_PER_ASSET);
+
+        long sampledSize = 0;
+        long compressedSize = 0;
+        long nanos = 0;
+
+        try (ReadableByteChannel channel = input.source().open()) {
+            for (int i = 0; i < samples; i++) {
+                if (channel instanceof SeekableByteChannel seekable) {
+                    // Spread samples evenly across the asset
+                    seekable.position((long) i * blocks / samples * BLOCK_SIZE);
+                }
+
+                int length = read(channel, block);
+                if (length == 0) {
+                    break;
+                }
+
+                long start = System.nanoTime();
+                int compressed = compress(block, length);
+                nanos += System.nanoTime() - start;
+
+                // Blocks that don't shrink are stored as is
+                sampledSize += length;
+                compressedSize += Math.min(compressed, length);
+            }
+        }
+
+        return new Sample(sampledSize, compressedSize, nanos);
+    }
+
+    private int compress(byte[] block, int length) throws IOException {
+        return switch (compression) {
+            case ZLIB -> {
+                var deflater = new Deflater(level);
+                var output = new byte[BLOCK_SIZE];
+                try {
+                    deflater.setInput(block, 0, length);
+                    deflater.finish();
+                    int total = 0;
+                    while (!deflater.finished()) {
+                        total += deflater.deflate(output);
+                    }
+                    yield total;
+                } finally {
+                    deflater.end();
+                }
+            }
+            case LZMA -> {
+                var options = new LZMA2Options(level);
+                options.setDictSize(BLOCK_SIZE);
+                var output = new CountingOutputStream();
+                try (var stream = new LZMAOutputStream(output, options, length)) {
+                    stream.write(block, 0, length);
+                }
+                yield Math.toIntExact(output.count);
+            }
+            case OODLE -> throw new UnsupportedOperationException();
+        };
+    }
+
+    private static int read(ReadableByteChannel channel, byte[] block) throws IOException {
+        var buffer = ByteBuffer.wrap(block);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    record Input(PsarcAssetId id, AssetSource source, boolean compressed) {
+    }
+
+    private record Sample(long sampledSize, long compressedSize, long nanos) {
+        long extrapolate(long value, long size) {
+            return sampledSize == 0 ? value : Math.round((double) value * size / sampledSize);
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -66,7 +66,11 @@ public record PsarcHeader(
     }
 
     public ByteBuffer toByteBuffer() {
-        return ByteBuffer.allocate(32)
+        return put(ByteBuffer.allocate(BYTES)).flip();
+    }
+
+    public ByteBuffer put(ByteBuffer buffer) {
+        return buffer
             .putInt(magic.value())
             .putShort(major)
             .putShort(minor)
@@ -75,8 +79,7 @@ public record PsarcHeader(
             .putInt(tocEntrySize)
             .putInt(tocEntries)
             .putInt(blockSize)
-            .putInt(flags)
-            .flip();
+            .putInt(flags);
     }
 
     public boolean isIgnoreCase() {
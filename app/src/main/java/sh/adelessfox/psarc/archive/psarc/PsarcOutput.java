@@ -0,0 +1,107 @@
+package sh.adelessfox.psarc.archive.psarc;
+
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A buffered output that batches archive data into large positional writes.
+ * <p>
+ * The output keeps track of its own position and never moves the position
+ * of the underlying channel.
+ */
+final class PsarcOutput implements Flushable {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long position;
+
+    PsarcOutput(FileChannel channel, long position) {
+        this.channel = channel;
+        this.position = position;
+    }
+
+    /**
+     * Returns the position in the channel the next byte will be written at.
+     */
+    long position() {
+        return position;
+    }
+
+    /**
+     * Writes all remaining bytes of the given buffer.
+     *
+     * @param src the buffer to write
+     * @throws IOException if an I/O error has occurred
+     */
+    void write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        if (length > buffer.remaining()) {
+            flush();
+        }
+        if (length > buffer.remaining()) {
+            writeFully(src, position);
+        } else {
+            buffer.put(src);
+        }
+        position += length;
+    }
+
+    /**
+     * Writes zeros until the position is a multiple of {@code alignment}.
+     *
+     * @param alignment the alignment; must be a power of two
+     * @throws IOException if an I/O error has occurred
+     */
+    void pad(int alignment) throws IOException {
+        long padding = -position & (alignment - 1);
+        while (padding > 0) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int length = (int) Math.min(padding, buffer.remaining());
+            buffer.put(buffer.position(), new byte[length]);
+            buffer.position(buffer.position() + length);
+            position += length;
+            padding -= length;
+        }
+    }
+
+    /**
+     * Transfers exactly {@code count} bytes from the given file channel starting at its current position.
+     * <p>
+     * The operating system may copy the data without passing it through the user space.
+     *
+     * @param src   the channel to transfer from
+     * @param count the number of bytes to transfer
+     * @throws IOException if an I/O error has occurred
+     */
+    void transferFrom(FileChannel src, long count) throws IOException {
+        flush();
+        long transferred = 0;
+        while (transferred < count) {
+            long written = channel.transferFrom(src, position + transferred, count - transferred);
+            if (written <= 0) {
+                throw new EOFException();
+            }
+            transferred += written;
+        }
+        position += count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer, position - buffer.remaining());
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package sh.adelessfox.psarc.archive.psarc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sh.adelessfox.psarc.archive.ArchiveWriter.AssetOption;
+import sh.adelessfox.psarc.archive.ArchiveWriter.AssetSource;
+import sh.adelessfox.psarc.util.Channels;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A writer for PSARC archives that accepts assets as they are produced.
+ * <p>
+ * Unlike {@link PsarcArchiveWriter}, assets don't need to be known in advance.
+ * Their data is written to a temporary file next to the archive right away,
+ * and the archive itself is written by {@link #finish()}: the table of contents
+ * followed by a single copy of the data. Closing the writer before it was
+ * finished discards everything that was written.
+ * <p>
+ * The writer is safe to use from multiple threads.
+ */
+public final class PsarcStreamingWriter implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(PsarcStreamingWriter.class);
+
+    private final Path path;
+    private final OpenOption[] options;
+    private final PsarcCompression compression;
+    private final int alignment;
+
+    private final Path dataPath;
+    private final FileChannel data;
+    private final PsarcBlockWriter writer;
+    private final List<PsarcEntry> entries = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final Set<PsarcAssetId> ids = new HashSet<>();
+    private boolean closed;
+
+    /**
+     * Creates a new writer.
+     *
+     * @param path        the path to the archive
+     * @param compression the compression used by the archive
+     * @param alignment   the boundary the first block of each uncompressed asset is aligned to;
+     *                    must be a power of two, {@code 1} disables alignment
+     * @param options     options specifying how the archive file is opened
+     * @throws IOException if an I/O error has occurred
+     */
+    public PsarcStreamingWriter(Path path, PsarcCompression compression, int alignment, OpenOption... options) throws IOException {
+        if (alignment <= 0 || Integer.bitCount(alignment) != 1) {
+            throw new IllegalArgumentException("alignment must be a power of two, was " + alignment);
+        }
+
+        this.path = path;
+        this.options = options.clone();
+        this.compression = compression;
+        this.alignment = alignment;
+
+        this.dataPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        this.data = FileChannel.open(dataPath, READ, WRITE, DELETE_ON_CLOSE);
+        this.writer = new PsarcBlockWriter(data, 0, alignment);
+    }
+
+    /**
+     * Adds a new asset to the archive.
+     *
+     * @param id      the id of the asset
+     * @param source  the asset source
+     * @param options options specifying additional options for the asset
+     * @throws IOException if an I/O error has occurred
+     */
+    public void add(PsarcAssetId id, AssetSource source, AssetOption... options) throws IOException {
+        try (ReadableByteChannel channel = source.open()) {
+            add(id, channel, source.size(), options);
+        }
+    }
+
+    /**
+     * Adds a new asset to the archive, reading its data until the end of the channel.
+     * <p>
+     * The channel is not closed by this method.
+     *
+     * @param id      the id of the asset
+     * @param channel the channel to read the asset data from
+     * @param options options specifying additional options for the asset
+     * @throws IOException if an I/O error has occurred
+     */
+    public void add(PsarcAssetId id, ReadableByteChannel channel, AssetOption... options) throws IOException {
+        add(id, channel, -1, options);
+    }
+
+    /**
+     * Writes the archive. No more assets can be added afterward.
+     *
+     * @throws IOException if an I/O error has occurred
+     */
+    public synchronized void finish() throws IOException {
+        ensureOpen();
+
+        // Write manifest
+        var manifest = new PsarcManifest(names).asByteBuffer();
+        entries.addFirst(writer.write(PsarcBlockWriter.computeHash(null), Channels.byteBufferChannel(manifest), manifest.remaining(), true));
+        writer.flush();
+
+        // Data follows the toc, so all offsets must be shifted
+        int tocSize = PsarcBlockWriter.computeTocSize(entries.size(), writer.blockCount());
+        long dataOffset = tocSize + (-tocSize & (alignment - 1));
+        var tocEntries = entries.stream()
+            .map(entry -> new PsarcEntry(entry.hash(), entry.blockOffset(), entry.uncompressedSize(), entry.fileOffset() + dataOffset))
+            .toList();
+
+        log.debug("Writing {} assets ({} bytes) to {}", names.size(), data.size(), path);
+
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            var output = new PsarcOutput(channel, 0);
+            output.write(writer.buildToc(compression, tocEntries));
+            output.pad(alignment);
+            output.transferFrom(data.position(0), data.size());
+        }
+
+        close();
+    }
+
+    /**
+     * Closes the writer and deletes the temporary data file.
+     *
+     * @throws IOException if an I/O error has occurred
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        data.close();
+        Files.deleteIfExists(dataPath);
+    }
+
+    private synchronized void add(PsarcAssetId id, ReadableByteChannel channel, long size, AssetOption... options) throws IOException {
+        ensureOpen();
+
+        if (ids.contains(id)) {
+            throw new IllegalArgumentException("Asset " + id + " was already added to the writer");
+        }
+
+        log.debug("Writing {} ({} bytes)", id, size < 0 ? "unknown" : size);
+
+        var compress = PsarcArchiveWriter.isCompressed(options);
+        entries.add(writer.write(PsarcBlockWriter.computeHash(id), channel, size, compress));
+        names.add(id.name());
+        ids.add(id);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+    }
+}
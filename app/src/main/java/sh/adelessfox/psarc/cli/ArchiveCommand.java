@@ -1,22 +1,32 @@
 package sh.adelessfox.psarc.cli;
 
+import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
 import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 abstract class ArchiveCommand implements Callable<Void> {
     @Parameters(index = "0", arity = "1", description = "The file to process.")
     protected Path input;
 
+    @Option(names = "--include", description = "Only process entries matching the pattern (glob, or regex if prefixed with 'regex:')")
+    private List<String> includes = new ArrayList<>();
+
+    @Option(names = "--exclude", description = "Skip entries matching the pattern (glob, or regex if prefixed with 'regex:')")
+    private List<String> excludes = new ArrayList<>();
+
     @Override
     public Void call() throws IOException {
+        var filter = AssetFilter.of(includes, excludes);
         try (var archive = new PsarcArchive(input)) {
-            process(archive, archive.getAll());
+            process(archive, filter.select(archive));
             return null;
         }
     }
@@ -0,0 +1,199 @@
+package sh.adelessfox.psarc.cli;
+
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Selects assets by their names using glob or regular expression patterns.
+ * <p>
+ * Patterns follow the syntax of {@link java.nio.file.FileSystem#getPathMatcher}: either
+ * {@code glob:} or {@code regex:} followed by the pattern itself. Patterns without a
+ * syntax are treated as globs. A pattern must match the whole name of an asset.
+ * <p>
+ * If every include pattern starts with a literal prefix, such as {@code textures/**},
+ * only assets within the prefixes are looked at instead of the whole archive.
+ */
+final class AssetFilter {
+    private static final String GLOB_SYNTAX = "glob:";
+    private static final String REGEX_SYNTAX = "regex:";
+    private static final String REGEX_META = "\\^$.|?*+()[]{}";
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+    private final List<String> prefixes;
+
+    private AssetFilter(List<Pattern> includes, List<Pattern> excludes, List<String> prefixes) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.prefixes = prefixes;
+    }
+
+    static AssetFilter of(List<String> includes, List<String> excludes) {
+        // Without includes, every asset is a candidate
+        var prefixes = includes.isEmpty() ? null : new ArrayList<String>();
+        for (String include : includes) {
+            var prefix = literalPrefix(include);
+            if (prefix.isEmpty()) {
+                prefixes = null;
+                break;
+            }
+            prefixes.add(prefix);
+        }
+
+        return new AssetFilter(
+            includes.stream().map(AssetFilter::compile).toList(),
+            excludes.stream().map(AssetFilter::compile).toList(),
+            prefixes != null ? mergePrefixes(prefixes) : null
+        );
+    }
+
+    /**
+     * Returns assets of the archive that match the filter, sorted by their names.
+     */
+    Collection<PsarcAsset> select(PsarcArchive archive) {
+        if (includes.isEmpty() && excludes.isEmpty()) {
+            return archive.getAll();
+        }
+
+        Stream<PsarcAsset> candidates;
+        if (prefixes != null) {
+            candidates = prefixes.stream().flatMap(prefix -> archive.getAll(prefix).stream()).distinct();
+        } else {
+            candidates = archive.getAll().stream();
+        }
+
+        return candidates
+            .filter(asset -> test(asset.id().fullName()))
+            .toList();
+    }
+
+    boolean test(String name) {
+        if (!includes.isEmpty() && includes.stream().noneMatch(pattern -> pattern.matcher(name).matches())) {
+            return false;
+        }
+        return excludes.stream().noneMatch(pattern -> pattern.matcher(name).matches());
+    }
+
+    private static Pattern compile(String pattern) {
+        if (pattern.startsWith(REGEX_SYNTAX)) {
+            return Pattern.compile(pattern.substring(REGEX_SYNTAX.length()));
+        } else if (pattern.startsWith(GLOB_SYNTAX)) {
+            return Pattern.compile(globToRegex(pattern.substring(GLOB_SYNTAX.length())));
+        } else {
+            return Pattern.compile(globToRegex(pattern));
+        }
+    }
+
+    /**
+     * Returns the part of the pattern every matching name starts with, or an empty string.
+     */
+    static String literalPrefix(String pattern) {
+        if (pattern.startsWith(REGEX_SYNTAX)) {
+            var regex = pattern.substring(REGEX_SYNTAX.length());
+            if (regex.indexOf('|') >= 0) {
+                return "";
+            }
+            int start = regex.startsWith("^") ? 1 : 0;
+            int end = start;
+            while (end < regex.length() && REGEX_META.indexOf(regex.charAt(end)) < 0) {
+                end++;
+            }
+            // A quantifier makes the preceding character optional
+            if (end < regex.length() && "?*{".indexOf(regex.charAt(end)) >= 0 && end > start) {
+                end--;
+            }
+            return regex.substring(start, end);
+        } else {
+            var glob = pattern.startsWith(GLOB_SYNTAX) ? pattern.substring(GLOB_SYNTAX.length()) : pattern;
+            int end = 0;
+            while (end < glob.length() && "*?[{\\".indexOf(glob.charAt(end)) < 0) {
+                end++;
+            }
+            return glob.substring(0, end);
+        }
+    }
+
+    private static List<String> mergePrefixes(List<String> prefixes) {
+        var result = new ArrayList<String>();
+        for (String prefix : prefixes.stream().sorted().toList()) {
+            if (result.isEmpty() || !prefix.startsWith(result.getLast())) {
+                result.add(prefix);
+            }
+        }
+        return result;
+    }
+
+    private static String globToRegex(String glob) {
+        var regex = new StringBuilder(glob.length() + 16);
+        var inGroup = false;
+
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*' -> {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                }
+                case '?' -> regex.append("[^/]");
+                case '{' -> {
+                    if (inGroup) {
+                        throw new IllegalArgumentException("Nested groups are not supported: " + glob);
+                    }
+                    regex.append("(?:");
+                    inGroup = true;
+                }
+                case '}' -> {
+                    if (inGroup) {
+                        regex.append(')');
+                        inGroup = false;
+                    } else {
+                        regex.append("\\}");
+                    }
+                }
+                case ',' -> regex.append(inGroup ? "|" : ",");
+                case '[' -> {
+                    int end = glob.indexOf(']', i + 2);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Missing ']' in " + glob);
+                    }
+                    var range = glob.substring(i + 1, end);
+                    regex.append('[');
+                    if (range.startsWith("!")) {
+                        regex.append('^');
+                        range = range.substring(1);
+                    }
+                    regex.append(range.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = end;
+                }
+                case '\\' -> {
+                    if (i + 1 == glob.length()) {
+                        throw new IllegalArgumentException("Trailing '\\' in " + glob);
+                    }
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                }
+                default -> {
+                    if (REGEX_META.indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+                }
+            }
+        }
+
+        if (inGroup) {
+            throw new IllegalArgumentException("Missing '}' in " + glob);
+        }
+
+        return regex.toString();
+    }
+}
@@ -4,33 +4,93 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
 import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+import sh.adelessfox.psarc.extract.ArchiveExtractor;
+import sh.adelessfox.psarc.extract.ExtractOption;
+import sh.adelessfox.psarc.extract.ProgressReporter;
+import sh.adelessfox.psarc.util.RateLimiter;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collection;
-
-import static java.nio.file.StandardOpenOption.*;
+import java.util.EnumSet;
 
 @Command(name = "extract", description = "Extract all entries and place in a specified directory", showDefaultValues = true)
 final class ExtractCommand extends ArchiveCommand {
     @Option(names = "--dir", description = "Target directory for output files")
     private Path dir = Path.of("").toAbsolutePath();
 
+    @Option(names = "--threads", description = "Number of threads used for decompression")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = "--memory-limit", description = "Maximum amount of memory (in MiB) held by assets that are being extracted")
+    private int memoryLimit = 256;
+
+    @Option(names = "--mapped", description = "Decompress assets straight into memory-mapped output files")
+    private boolean mapped;
+
+    @Option(names = "--resume", description = "Continue a previous extraction into the same directory that didn't complete")
+    private boolean resume;
+
+    @Option(names = "--incremental", description = "Only write files whose contents differ from the existing files")
+    private boolean incremental;
+
+    @Option(names = "--delete", description = "Delete files of a previous incremental extraction that are no longer in the archive")
+    private boolean delete;
+
+    @Option(names = "--hard-links", description = "Extract entries that share data once and create the rest as hard links")
+    private boolean hardLinks;
+
+    @Option(names = "--direct", description = "Write output files bypassing the page cache")
+    private boolean direct;
+
+    @Option(names = "--rate-limit", description = "Maximum combined rate (in MiB/s) of reading the archive and writing output files; 0 means unlimited")
+    private int rateLimit;
+
+    @Option(names = "--iops-limit", description = "Maximum combined number of read and write operations per second; 0 means unlimited")
+    private int iopsLimit;
+
     @Override
     protected void process(PsarcArchive archive, Collection<PsarcAsset> assets) throws IOException {
-        int index = 1;
-        for (PsarcAsset asset : assets) {
-            System.out.printf("[%d/%d] Extracting %s%n", index, assets.size(), asset.id().fullName());
-
-            Path path = dir.resolve(asset.id().fullName());
-            Files.createDirectories(path.getParent());
+        var extractor = new ArchiveExtractor(archive, dir);
+        extractor.setParallelism(threads);
+        extractor.setMemoryLimit(memoryLimit * 1024L * 1024L);
+        // Reads and writes share the same budget
+        var rateLimiter = new RateLimiter(rateLimit * 1024L * 1024L, iopsLimit);
+        extractor.setRateLimiter(rateLimiter);
+        extractor.setReadRateLimiter(rateLimiter);
 
-            try (var channel = Files.newByteChannel(path, WRITE, CREATE, TRUNCATE_EXISTING)) {
-                channel.write(archive.read(asset.id()));
-            }
+        var options = EnumSet.noneOf(ExtractOption.class);
+        if (mapped) {
+            options.add(ExtractOption.MAPPED);
+        }
+        if (resume) {
+            options.add(ExtractOption.RESUME);
+        }
+        if (incremental) {
+            options.add(ExtractOption.INCREMENTAL);
+        }
+        if (delete) {
+            options.add(ExtractOption.DELETE_REMOVED);
+        }
+        if (hardLinks) {
+            options.add(ExtractOption.HARD_LINKS);
+        }
+        if (direct) {
+            options.add(ExtractOption.DIRECT);
+        }
 
-            index += 1;
+        var totalSize = assets.stream().mapToLong(PsarcAsset::uncompressedSize).sum();
+        try (var progress = new ProgressReporter(assets.size(), totalSize, Duration.ofMillis(100), ExtractCommand::printProgress)) {
+            extractor.extract(assets, progress, options.toArray(ExtractOption[]::new));
+        } finally {
+            System.out.println();
         }
     }
+
+    private static void printProgress(ProgressReporter.Progress progress) {
+        // Overwrite the same line; trailing spaces erase leftovers of a longer previous line
+        System.out.printf("\r[%d/%d] %s          ", progress.files(), progress.totalFiles(), progress.format());
+        System.out.flush();
+    }
 }
@@ -4,18 +4,24 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
 import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+import sh.adelessfox.psarc.util.PathTree;
 
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
 
 @Command(name = "list", description = "Print the names of all the entries in the archive", showDefaultValues = true)
 final class ListCommand extends ArchiveCommand {
     @Option(names = "--verbose", description = "Listing prints entry sizes")
     private boolean verbose;
 
+    @Option(names = "--tree", description = "Print entries as a tree of folders")
+    private boolean tree;
+
     @Option(names = "--output", description = "Target file to write the output to")
     private Path output;
 
@@ -28,6 +34,14 @@ final class ListCommand extends ArchiveCommand {
             ps = System.out;
         }
         try (ps) {
+            if (tree) {
+                var paths = new PathTree<PsarcAsset>(PsarcAsset::uncompressedSize);
+                for (PsarcAsset asset : assets) {
+                    paths.put(asset.id().toFilePath(), asset);
+                }
+                printTree(ps, paths.root(), "");
+                return;
+            }
             if (verbose) {
                 ps.printf("%10s %10s %10s %s%n", "Offset", "Size", "Compressed", "Entry");
             }
@@ -40,4 +54,29 @@ final class ListCommand extends ArchiveCommand {
             }
         }
     }
+
+    private void printTree(PrintStream ps, PathTree.Node<PsarcAsset> node, String indent) {
+        var folders = node.folders().stream()
+            .sorted(Comparator.comparing(folder -> folder.label().full()))
+            .toList();
+        for (PathTree.Node<PsarcAsset> folder : folders) {
+            if (verbose) {
+                ps.printf("%s%s/ (%d files, %d bytes)%n", indent, folder.label().full(), folder.count(), folder.weight());
+            } else {
+                ps.printf("%s%s/%n", indent, folder.label().full());
+            }
+            printTree(ps, folder, indent + "  ");
+        }
+
+        var files = node.files().entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
+            .toList();
+        for (Map.Entry<String, PsarcAsset> file : files) {
+            if (verbose) {
+                ps.printf("%s%s (%d bytes)%n", indent, file.getKey(), file.getValue().uncompressedSize());
+            } else {
+                ps.printf("%s%s%n", indent, file.getKey());
+            }
+        }
+    }
 }
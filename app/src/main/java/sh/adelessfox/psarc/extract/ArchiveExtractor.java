@@ -0,0 +1,809 @@
+package sh.adelessfox.psarc.extract;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+import sh.adelessfox.psarc.archive.psarc.PsarcAssetId;
+import sh.adelessfox.psarc.util.RateLimiter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Extracts assets of an archive into a directory using multiple threads.
+ * <p>
+ * Assets are read and decompressed by a bounded pool of platform threads, while
+ * output files are written by virtual threads. The total size of assets that were
+ * read but not yet written is bounded by the {@linkplain #setMemoryLimit memory limit}.
+ * <p>
+ * Assets that are stored without compression are copied from the archive file
+ * to the output file directly, without passing through the memory.
+ * <p>
+ * Assets that are larger than the memory limit, or all compressed assets if
+ * {@link ExtractOption#MAPPED} is specified, are decompressed straight into
+ * a memory-mapped output file. Such assets are split into chunks that are
+ * decompressed in parallel.
+ * <p>
+ * Each asset is written to a temporary file that is renamed once complete, so
+ * a partially written file never appears under its final name. Extracted assets
+ * are recorded in a journal that is deleted once all assets are extracted. If the
+ * extraction doesn't complete, {@link ExtractOption#RESUME} picks up where it left off.
+ * With {@link ExtractOption#INCREMENTAL}, the journal is kept after the extraction completes
+ * and is used to tell which files changed the next time.
+ * <p>
+ * With {@link ExtractOption#HARD_LINKS}, assets that point to the same data in
+ * the archive are extracted once and the rest are created as hard links.
+ */
+public final class ArchiveExtractor {
+    private static final Logger log = LoggerFactory.getLogger(ArchiveExtractor.class);
+
+    private static final int PERMIT_SIZE = 1024;
+    private static final int MAX_OPEN_FILES = 64;
+    private static final int MAPPED_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final PsarcArchive archive;
+    private final Path root;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long memoryLimit = 256L * 1024 * 1024;
+    private RateLimiter rateLimiter = new RateLimiter();
+    private RateLimiter readRateLimiter = new RateLimiter();
+
+    public ArchiveExtractor(PsarcArchive archive, Path root) {
+        this.archive = archive;
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Sets the number of threads that read and decompress assets.
+     *
+     * @param parallelism the number of threads, must be positive
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive, was " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the maximum number of bytes that can be held in memory at once.
+     * <p>
+     * An asset that is larger than the limit is decompressed into a memory-mapped file instead.
+     *
+     * @param memoryLimit the limit in bytes, must be positive
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        if (memoryLimit <= 0) {
+            throw new IllegalArgumentException("memoryLimit must be positive, was " + memoryLimit);
+        }
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Sets the limiter that all writes to target files are subject to.
+     * <p>
+     * Reads from the archive are limited using {@link #setReadRateLimiter}. Passing the same
+     * limiter to both makes reads and writes share one budget.
+     *
+     * @param rateLimiter the rate limiter
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = Objects.requireNonNull(rateLimiter, "rateLimiter");
+    }
+
+    /**
+     * Sets the limiter that reads from the archive made by this extractor are subject to.
+     * Other reads from the same archive are not limited by it.
+     *
+     * @param readRateLimiter the rate limiter
+     */
+    public void setReadRateLimiter(RateLimiter readRateLimiter) {
+        this.readRateLimiter = Objects.requireNonNull(readRateLimiter, "readRateLimiter");
+    }
+
+    /**
+     * Extracts the given assets.
+     * <p>
+     * If one of the assets fails to extract, no more assets are started and the
+     * error is rethrown once the assets that are already in progress complete.
+     * The same happens if the calling thread is interrupted.
+     *
+     * @param assets   the assets to extract
+     * @param listener the listener notified about each extracted asset; called from worker threads
+     * @param options  options specifying how assets are extracted
+     * @throws IOException if an I/O error has occurred
+     */
+    public void extract(Collection<PsarcAsset> assets, Listener listener, ExtractOption... options) throws IOException {
+        var optionSet = toSet(options);
+        var fingerprint = fingerprint(archive.getAll());
+
+        Files.createDirectories(root);
+        createDirectories(assets);
+
+        var previous = ExtractJournal.read(root);
+        var resume = optionSet.contains(ExtractOption.RESUME) && previous != null && previous.fingerprint() == fingerprint;
+        var journal = ExtractJournal.open(root, fingerprint, resume);
+
+        Map<PsarcAsset, List<PsarcAsset>> duplicates = Map.of();
+        if (optionSet.contains(ExtractOption.HARD_LINKS)) {
+            var unique = new ArrayList<PsarcAsset>(assets.size());
+            duplicates = groupDuplicates(assets, unique);
+            assets = unique;
+        }
+
+        var outputs = optionSet.contains(ExtractOption.DIRECT) ? new DirectOutput.Group(root) : null;
+        var context = new Context(listener, optionSet, journal, resume ? previous.entries() : Map.of(), previous, duplicates, outputs);
+        var memory = new Semaphore(toPermits(memoryLimit));
+        var files = context.files;
+
+        // Workers are never interrupted: that would close the archive's channels
+        var decoders = Executors.newFixedThreadPool(parallelism);
+        var writers = Executors.newVirtualThreadPerTaskExecutor();
+        var interrupted = false;
+
+        try {
+            for (PsarcAsset asset : assets) {
+                if (context.failure.get() != null) {
+                    break;
+                }
+
+                if (context.options.contains(ExtractOption.DIRECT)) {
+                    files.acquire();
+                    decoders.execute(() -> {
+                        try {
+                            writeDirect(context, asset);
+                        } finally {
+                            files.release();
+                        }
+                    });
+                    continue;
+                }
+
+                if (archive.isStored(asset)) {
+                    files.acquire();
+                    writers.execute(() -> {
+                        try {
+                            transfer(context, asset);
+                        } finally {
+                            files.release();
+                        }
+                    });
+                    continue;
+                }
+
+                if (isMapped(context, asset)) {
+                    files.acquire();
+                    var size = asset.uncompressedSize();
+                    var target = new MappedTarget(context, asset, Math.toIntExact((size + MAPPED_CHUNK_SIZE - 1) / MAPPED_CHUNK_SIZE));
+                    for (long position = 0; position < size; position += MAPPED_CHUNK_SIZE) {
+                        long chunkPosition = position;
+                        decoders.execute(() -> target.decode(chunkPosition, Math.min(MAPPED_CHUNK_SIZE, size - chunkPosition)));
+                    }
+                    continue;
+                }
+
+                int permits = Math.min(toPermits(asset.uncompressedSize()), toPermits(memoryLimit));
+                memory.acquire(permits);
+
+                decoders.execute(() -> {
+                    try {
+                        var data = decode(context, asset);
+                        if (data == null) {
+                            memory.release(permits);
+                            return;
+                        }
+                        writers.execute(() -> {
+                            try {
+                                write(context, asset, data);
+                            } finally {
+                                memory.release(permits);
+                            }
+                        });
+                    } catch (Throwable e) {
+                        memory.release(permits);
+                        context.fail(e);
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            context.interrupt();
+        } finally {
+            // Writers are submitted by decoders, so decoders must finish first
+            interrupted |= context.await(decoders);
+            interrupted |= context.await(writers);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        var failure = context.failure.get();
+        if (failure == null) {
+            if (!optionSet.contains(ExtractOption.INCREMENTAL)) {
+                journal.delete();
+                return;
+            }
+            journal.close();
+            if (optionSet.contains(ExtractOption.DELETE_REMOVED) && previous != null) {
+                deleteRemoved(previous);
+            }
+            return;
+        }
+
+        try {
+            journal.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+
+        if (failure instanceof IOException e) {
+            throw e;
+        } else if (failure instanceof UncheckedIOException e) {
+            throw e.getCause();
+        } else if (failure instanceof RuntimeException e) {
+            throw e;
+        } else if (failure instanceof Error e) {
+            throw e;
+        } else if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+
+    private ByteBuffer decode(Context context, PsarcAsset asset) throws IOException {
+        if (skip(context, asset)) {
+            return null;
+        }
+        return archive.read(asset, readRateLimiter);
+    }
+
+    private void write(Context context, PsarcAsset asset, ByteBuffer data) {
+        context.files.acquireUninterruptibly();
+        try {
+            try (var channel = open(asset)) {
+                var output = limit(channel);
+                while (data.hasRemaining()) {
+                    output.write(data);
+                }
+            }
+
+            commit(context, asset);
+        } catch (Throwable e) {
+            discard(asset);
+            context.fail(e);
+        } finally {
+            context.files.release();
+        }
+    }
+
+    private void transfer(Context context, PsarcAsset asset) {
+        try {
+            if (skip(context, asset)) {
+                return;
+            }
+
+            try (var channel = open(asset)) {
+                archive.transferTo(asset, limit(channel), readRateLimiter);
+            }
+
+            commit(context, asset);
+        } catch (Throwable e) {
+            discard(asset);
+            context.fail(e);
+        }
+    }
+
+    private void writeDirect(Context context, PsarcAsset asset) {
+        try {
+            if (skip(context, asset)) {
+                return;
+            }
+
+            var size = asset.uncompressedSize();
+
+            try (var output = context.outputs.open(toPartPath(resolve(asset)))) {
+                var buffer = output.buffer();
+                for (long position = 0; position < size; ) {
+                    int length = (int) Math.min(buffer.capacity(), size - position);
+                    archive.read(asset, position, buffer.clear().limit(length), readRateLimiter);
+                    buffer.flip();
+                    rateLimiter.acquire(length);
+                    output.write();
+                    position += length;
+                }
+            }
+
+            commit(context, asset);
+        } catch (Throwable e) {
+            discard(asset);
+            context.fail(e);
+        }
+    }
+
+    private boolean isMapped(Context context, PsarcAsset asset) {
+        if (asset.uncompressedSize() == 0) {
+            return false;
+        }
+        return context.options.contains(ExtractOption.MAPPED) || asset.uncompressedSize() > memoryLimit;
+    }
+
+    private boolean skip(Context context, PsarcAsset asset) throws IOException {
+        if (context.failure.get() != null) {
+            return true;
+        }
+        if (isCompleted(context, asset)) {
+            done(context, asset);
+            return true;
+        }
+        if (context.options.contains(ExtractOption.INCREMENTAL) && isUnchanged(context, asset)) {
+            done(context, asset);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the target file already has the contents of the asset, and records it in the journal if so.
+     */
+    private boolean isUnchanged(Context context, PsarcAsset asset) throws IOException {
+        var path = resolve(asset);
+        var size = asset.uncompressedSize();
+        if (!Files.exists(path) || Files.size(path) != size) {
+            return false;
+        }
+
+        var entry = toEntry(context, asset);
+        var previous = context.previous != null ? context.previous.entries().get(asset.id().fullName()) : null;
+
+        // The file was extracted from data with the same checksum, unless it was modified after the journal
+        if (!entry.equals(previous) || Files.getLastModifiedTime(path).compareTo(context.previous.lastModified()) > 0) {
+            try (var channel = new ComparingChannel(FileChannel.open(path, READ))) {
+                archive.transferTo(asset, channel, readRateLimiter);
+                if (!channel.isEqual()) {
+                    return false;
+                }
+            }
+        }
+
+        context.journal.add(asset.id().fullName(), entry);
+        return true;
+    }
+
+    private void deleteRemoved(ExtractJournal.State previous) throws IOException {
+        for (String name : previous.entries().keySet()) {
+            if (archive.get(PsarcAssetId.of(name)).isPresent()) {
+                continue;
+            }
+            var path = resolve(name);
+            if (Files.deleteIfExists(path)) {
+                log.debug("Deleted {} as it's no longer in the archive", path);
+            }
+        }
+    }
+
+    private boolean isCompleted(Context context, PsarcAsset asset) throws IOException {
+        var entry = context.completed.get(asset.id().fullName());
+        if (entry == null || entry.size() != asset.uncompressedSize()) {
+            return false;
+        }
+        var path = resolve(asset);
+        return Files.exists(path) && Files.size(path) == entry.size();
+    }
+
+    /**
+     * Opens a temporary file the asset is written to before it's {@linkplain #commit committed}.
+     */
+    private FileChannel open(PsarcAsset asset) throws IOException {
+        return open(asset, WRITE, CREATE, TRUNCATE_EXISTING);
+    }
+
+    private FileChannel open(PsarcAsset asset, OpenOption... options) throws IOException {
+        return FileChannel.open(toPartPath(resolve(asset)), options);
+    }
+
+    /**
+     * Creates target directories of all assets up front, so that files can be opened without checking for them.
+     */
+    private void createDirectories(Collection<PsarcAsset> assets) throws IOException {
+        var directories = new HashSet<Path>();
+        for (PsarcAsset asset : assets) {
+            directories.add(resolve(asset).getParent());
+        }
+
+        // Parents are created along with their children
+        for (Path directory : List.copyOf(directories)) {
+            directories.remove(directory.getParent());
+        }
+
+        try {
+            directories.parallelStream().forEach(directory -> {
+                try {
+                    Files.createDirectories(directory);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void commit(Context context, PsarcAsset asset) throws IOException {
+        var path = resolve(asset);
+        try {
+            Files.move(toPartPath(path), path, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(toPartPath(path), path, REPLACE_EXISTING);
+        }
+        context.journal.add(asset.id().fullName(), toEntry(context, asset));
+        done(context, asset);
+    }
+
+    /**
+     * Notifies the listener about an extracted or skipped asset and links its duplicates to it.
+     */
+    private void done(Context context, PsarcAsset asset) throws IOException {
+        context.listener.extracted(asset);
+
+        for (PsarcAsset duplicate : context.duplicates.getOrDefault(asset, List.of())) {
+            if (!skip(context, duplicate)) {
+                link(context, asset, duplicate);
+            }
+        }
+    }
+
+    private void link(Context context, PsarcAsset asset, PsarcAsset duplicate) throws IOException {
+        var source = resolve(asset);
+        var target = resolve(duplicate);
+        var part = toPartPath(target);
+
+        Files.deleteIfExists(part);
+
+        try {
+            Files.createLink(part, source);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            log.debug("Unable to create a hard link to {}, copying instead", source, e);
+            Files.copy(source, part, REPLACE_EXISTING);
+        }
+
+        try {
+            Files.move(part, target, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, REPLACE_EXISTING);
+        }
+
+        context.journal.add(duplicate.id().fullName(), toEntry(context, duplicate));
+        context.listener.extracted(duplicate);
+    }
+
+    /**
+     * Groups assets that point to the same data in the archive.
+     *
+     * @return assets to extract, and for each of them, the assets that share its data
+     */
+    private static Map<PsarcAsset, List<PsarcAsset>> groupDuplicates(Collection<PsarcAsset> assets, List<PsarcAsset> unique) {
+        var groups = new HashMap<Location, PsarcAsset>(assets.size());
+        var duplicates = new HashMap<PsarcAsset, List<PsarcAsset>>();
+        for (PsarcAsset asset : assets) {
+            var location = new Location(asset.fileOffset(), asset.blockOffset(), asset.uncompressedSize());
+            var primary = groups.putIfAbsent(location, asset);
+            if (primary == null) {
+                unique.add(asset);
+            } else {
+                duplicates.computeIfAbsent(primary, _ -> new ArrayList<>()).add(asset);
+            }
+        }
+        return duplicates;
+    }
+
+    private void discard(PsarcAsset asset) {
+        try {
+            Files.deleteIfExists(toPartPath(resolve(asset)));
+        } catch (IOException e) {
+            log.debug("Unable to delete a partially extracted asset {}", asset.id(), e);
+        }
+    }
+
+    private Path resolve(PsarcAsset asset) throws IOException {
+        return resolve(asset.id().fullName());
+    }
+
+    private Path resolve(String name) throws IOException {
+        var path = root.resolve(name).normalize();
+        if (!path.startsWith(root)) {
+            throw new IOException("Asset " + name + " points outside of the target directory");
+        }
+        return path;
+    }
+
+    /**
+     * Sets the length of the file before it's written. No space is allocated for it, the file is sparse until written.
+     */
+    private static void setLength(FileChannel channel, long size) throws IOException {
+        if (size > 0) {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+    }
+
+    /**
+     * Wraps the channel so that writes are subject to the rate limiter, unless it's not limited.
+     */
+    private WritableByteChannel limit(FileChannel channel) {
+        var rateLimiter = this.rateLimiter;
+        if (!rateLimiter.isLimited()) {
+            return channel;
+        }
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                var chunk = src.slice(src.position(), Math.min(src.remaining(), RateLimiter.CHUNK_SIZE));
+                rateLimiter.acquire(chunk.remaining());
+                int written = channel.write(chunk);
+                src.position(src.position() + written);
+                return written;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    private ExtractJournal.Entry toEntry(Context context, PsarcAsset asset) throws IOException {
+        // Checksums are only needed to tell which files changed the next time
+        var checksum = context.options.contains(ExtractOption.INCREMENTAL)
+            ? archive.checksum(asset, readRateLimiter)
+            : ExtractJournal.Entry.NO_CHECKSUM;
+        return new ExtractJournal.Entry(asset.uncompressedSize(), checksum);
+    }
+
+    private static Path toPartPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".part");
+    }
+
+    /**
+     * Computes a value that identifies the contents of the archive.
+     */
+    private static long fingerprint(Collection<PsarcAsset> assets) {
+        var checksum = new CRC32();
+        var buffer = ByteBuffer.allocate(Long.BYTES * 2);
+        for (PsarcAsset asset : assets) {
+            checksum.update(asset.id().fullName().getBytes(StandardCharsets.UTF_8));
+            checksum.update(buffer.clear().putLong(asset.fileOffset()).putLong(asset.uncompressedSize()).flip());
+        }
+        return checksum.getValue();
+    }
+
+    private static int toPermits(long size) {
+        return Math.toIntExact(Math.min(Integer.MAX_VALUE, (size + PERMIT_SIZE - 1) / PERMIT_SIZE));
+    }
+
+    private static Set<ExtractOption> toSet(ExtractOption... options) {
+        var set = EnumSet.noneOf(ExtractOption.class);
+        set.addAll(Arrays.asList(options));
+        return set;
+    }
+
+    /**
+     * A listener that is notified about extracted assets.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Called when an asset was extracted or skipped.
+         *
+         * @param asset the asset
+         */
+        void extracted(PsarcAsset asset);
+    }
+
+    /**
+     * An output file that is filled chunk by chunk. The file is opened by
+     * the first chunk and closed by the last one.
+     */
+    private final class MappedTarget {
+        private final Context context;
+        private final PsarcAsset asset;
+        private final AtomicInteger pending;
+        private FileChannel channel;
+        private boolean skipped;
+
+        MappedTarget(Context context, PsarcAsset asset, int chunks) {
+            this.context = context;
+            this.asset = asset;
+            this.pending = new AtomicInteger(chunks);
+        }
+
+        void decode(long position, long length) {
+            try {
+                var channel = prepare();
+                if (channel != null) {
+                    // Unmap right away rather than waiting for the buffer to be collected
+                    try (var arena = Arena.ofConfined()) {
+                        var buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, length, arena).asByteBuffer();
+                        for (int offset = 0; offset < buffer.capacity(); offset += RateLimiter.CHUNK_SIZE) {
+                            int count = Math.min(RateLimiter.CHUNK_SIZE, buffer.capacity() - offset);
+                            rateLimiter.acquire(count);
+                            archive.read(asset, position + offset, buffer.slice(offset, count), readRateLimiter);
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                context.fail(e);
+            } finally {
+                if (pending.decrementAndGet() == 0) {
+                    complete();
+                }
+            }
+        }
+
+        private synchronized FileChannel prepare() throws IOException {
+            if (channel == null && !skipped) {
+                if (skip(context, asset)) {
+                    skipped = true;
+                } else {
+                    channel = open(asset, READ, WRITE, CREATE, TRUNCATE_EXISTING);
+                    // Size the file up front instead of letting each mapping extend it
+                    setLength(channel, asset.uncompressedSize());
+                }
+            }
+            return context.failure.get() == null ? channel : null;
+        }
+
+        private synchronized void complete() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                    if (context.failure.get() == null) {
+                        commit(context, asset);
+                    } else {
+                        discard(asset);
+                    }
+                }
+            } catch (Throwable e) {
+                discard(asset);
+                context.fail(e);
+            } finally {
+                context.files.release();
+            }
+        }
+    }
+
+    private record Location(long fileOffset, int blockOffset, long uncompressedSize) {
+    }
+
+    /**
+     * A channel that compares everything written to it with the contents of a file.
+     */
+    private static final class ComparingChannel implements WritableByteChannel {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(65536);
+        private boolean equal = true;
+
+        ComparingChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        boolean isEqual() {
+            return equal;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int remaining = src.remaining();
+            while (equal && src.hasRemaining()) {
+                int length = Math.min(src.remaining(), buffer.capacity());
+                buffer.clear().limit(length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                }
+                equal = buffer.flip().equals(src.slice(src.position(), length));
+                src.position(src.position() + length);
+            }
+            src.position(src.limit());
+            return remaining;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class Context {
+        private final Listener listener;
+        private final Set<ExtractOption> options;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final Semaphore files = new Semaphore(MAX_OPEN_FILES);
+        private final ExtractJournal journal;
+        private final Map<String, ExtractJournal.Entry> completed;
+        private final ExtractJournal.State previous;
+        private final Map<PsarcAsset, List<PsarcAsset>> duplicates;
+        private final DirectOutput.Group outputs;
+
+        Context(
+            Listener listener,
+            Set<ExtractOption> options,
+            ExtractJournal journal,
+            Map<String, ExtractJournal.Entry> completed,
+            ExtractJournal.State previous,
+            Map<PsarcAsset, List<PsarcAsset>> duplicates,
+            DirectOutput.Group outputs
+        ) {
+            this.listener = listener;
+            this.options = options;
+            this.journal = journal;
+            this.completed = completed;
+            this.previous = previous;
+            this.duplicates = duplicates;
+            this.outputs = outputs;
+        }
+
+        void fail(Throwable throwable) {
+            if (!failure.compareAndSet(null, throwable)) {
+                log.debug("Suppressed an extraction error", throwable);
+            }
+        }
+
+        void interrupt() {
+            fail(new InterruptedIOException("Extraction was interrupted"));
+        }
+
+        /**
+         * Waits until all tasks of the executor complete. Tasks that haven't started
+         * yet are skipped if the current thread is interrupted while waiting.
+         *
+         * @return {@code true} if the current thread was interrupted while waiting
+         */
+        boolean await(ExecutorService executor) {
+            executor.shutdown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (executor.awaitTermination(1, TimeUnit.DAYS)) {
+                        return interrupted;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package sh.adelessfox.psarc.extract;
+
+import com.sun.nio.file.ExtendedOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * An output file that is written bypassing the page cache.
+ * <p>
+ * Data must be written through the {@linkplain #buffer() buffer} of the output, which is aligned
+ * to the block size of the file system. The last write may be shorter than the block size;
+ * it's padded when written, and the file is truncated to its actual size when closed.
+ * <p>
+ * If the file system doesn't support direct I/O, the file is written as usual, but
+ * written data is flushed to the disk in bounded batches so that dirty pages don't pile up.
+ * Outputs of the same {@link Group} share the batch, so small files don't cause a flush each.
+ */
+final class DirectOutput implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DirectOutput.class);
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int DEFAULT_ALIGNMENT = 4096;
+    private static final long FORCE_INTERVAL = 8 * 1024 * 1024;
+
+    private final Group group;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final boolean direct;
+    private long size;
+
+    private DirectOutput(Group group, FileChannel channel, boolean direct) {
+        this.group = group;
+        this.channel = channel;
+        this.buffer = group.acquireBuffer();
+        this.direct = direct;
+    }
+
+    /**
+     * Returns the buffer data must be written from.
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Writes the contents of the {@linkplain #buffer() buffer}. Only the last write may
+     * have fewer bytes than the capacity of the buffer.
+     *
+     * @throws IOException if an I/O error has occurred
+     */
+    void write() throws IOException {
+        size += buffer.remaining();
+
+        if (direct && buffer.limit() % group.alignment != 0) {
+            // The capacity of the buffer is a multiple of the alignment, so the padding always fits
+            int limit = buffer.limit();
+            int padded = limit + (-limit & (group.alignment - 1));
+            buffer.limit(padded);
+            buffer.put(limit, new byte[padded - limit]);
+        }
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        if (!direct && group.unforced.addAndGet(buffer.limit()) >= FORCE_INTERVAL) {
+            group.unforced.set(0);
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            if (direct) {
+                channel.truncate(size);
+            }
+        } finally {
+            group.releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Outputs within one directory, such as the target of an extraction.
+     * <p>
+     * The alignment is determined once for all outputs, and buffers are reused by outputs that are
+     * opened one after another, so there are only as many buffers as outputs that are open at once.
+     * Data written to all outputs is counted towards the same batch; the output whose write completes
+     * the batch is flushed.
+     */
+    static final class Group {
+        private final int alignment;
+        private final boolean direct;
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicLong unforced = new AtomicLong();
+
+        Group(Path root) {
+            this(root, true);
+        }
+
+        /**
+         * Creates a group of outputs.
+         *
+         * @param root   the directory outputs are opened in
+         * @param direct whether to try direct I/O; if {@code false}, outputs are written as if it's not supported
+         */
+        Group(Path root, boolean direct) {
+            this.alignment = getAlignment(root);
+            this.direct = direct;
+        }
+
+        /**
+         * Opens an output file, truncating it if it exists.
+         *
+         * @param path the path to the file
+         * @return the output
+         * @throws IOException if an I/O error has occurred
+         */
+        DirectOutput open(Path path) throws IOException {
+            if (!direct) {
+                return new DirectOutput(this, FileChannel.open(path, WRITE, CREATE, TRUNCATE_EXISTING), false);
+            }
+            try {
+                return new DirectOutput(this, FileChannel.open(path, WRITE, CREATE, TRUNCATE_EXISTING, ExtendedOpenOption.DIRECT), true);
+            } catch (UnsupportedOperationException | IOException e) {
+                log.debug("Direct I/O is not available for {}", path, e);
+                return new DirectOutput(this, FileChannel.open(path, WRITE, CREATE, TRUNCATE_EXISTING), false);
+            }
+        }
+
+        private ByteBuffer acquireBuffer() {
+            var buffer = buffers.poll();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(BUFFER_SIZE + alignment).alignedSlice(alignment).slice(0, BUFFER_SIZE);
+            }
+            return buffer.clear();
+        }
+
+        private void releaseBuffer(ByteBuffer buffer) {
+            buffers.offer(buffer);
+        }
+
+        private static int getAlignment(Path root) {
+            try {
+                long blockSize = Files.getFileStore(root).getBlockSize();
+                if (blockSize > 0 && blockSize <= BUFFER_SIZE && Long.bitCount(blockSize) == 1) {
+                    return (int) blockSize;
+                }
+            } catch (UnsupportedOperationException | IOException e) {
+                log.debug("Unable to determine the block size for {}", root, e);
+            }
+            return DEFAULT_ALIGNMENT;
+        }
+    }
+}
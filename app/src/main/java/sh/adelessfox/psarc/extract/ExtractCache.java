@@ -0,0 +1,230 @@
+package sh.adelessfox.psarc.extract;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A cache of assets extracted into files, so that they can be opened by other applications.
+ * <p>
+ * Each asset is extracted into a directory named after the archive and the location of the asset's
+ * data in it, so assets with the same name never collide, and an asset that was extracted before is
+ * reused. The archive is identified by its path, size and modification time, so extractions of an
+ * archive that has since changed aren't reused.
+ * <p>
+ * Assets are written to a temporary file that is renamed once complete, so a partially written file
+ * is never reused. Files that were used least recently are removed by {@link #evict()}.
+ */
+public final class ExtractCache {
+    private static final Logger log = LoggerFactory.getLogger(ExtractCache.class);
+
+    private static final String PART_SUFFIX = ".part";
+
+    private final Path root;
+    private final long budget;
+
+    /**
+     * Creates a cache.
+     *
+     * @param root   the directory to extract assets into
+     * @param budget the total size of files in bytes to keep when {@linkplain #evict() evicting}
+     */
+    public ExtractCache(Path root, long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("budget must not be negative, was " + budget);
+        }
+        this.root = root.toAbsolutePath().normalize();
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the file the asset was extracted into, if it's cached.
+     *
+     * @param path  the path to the archive
+     * @param asset the asset
+     * @return the extracted file, or an empty optional if the asset isn't cached
+     * @throws IOException if an I/O error has occurred
+     */
+    public Optional<Path> find(Path path, PsarcAsset asset) throws IOException {
+        var file = resolve(path, asset);
+        if (!Files.isRegularFile(file) || Files.size(file) != asset.uncompressedSize()) {
+            return Optional.empty();
+        }
+        // Used files are evicted last
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        return Optional.of(file);
+    }
+
+    /**
+     * Extracts the asset into a file, unless it's cached already.
+     *
+     * @param path     the path to the archive
+     * @param archive  the archive
+     * @param asset    the asset to extract
+     * @param progress the consumer of the number of bytes written so far; may throw to stop the extraction
+     * @return the extracted file
+     * @throws IOException if an I/O error has occurred
+     */
+    public Path extract(Path path, PsarcArchive archive, PsarcAsset asset, LongConsumer progress) throws IOException {
+        var cached = find(path, asset);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        var file = resolve(path, asset);
+        Files.createDirectories(file.getParent());
+
+        log.debug("Extracting {} into {}", asset.id().fullName(), file);
+
+        // Another extraction of the same asset may be in progress, so the temporary file is unique
+        var part = Files.createTempFile(file.getParent(), file.getFileName().toString(), PART_SUFFIX);
+        try {
+            try (var channel = FileChannel.open(part, WRITE)) {
+                archive.transferTo(asset, new ProgressChannel(channel, progress));
+            }
+            try {
+                Files.move(part, file, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part, file, REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(part);
+        }
+
+        return file;
+    }
+
+    /**
+     * Removes the least recently used files until the total size of the cache fits the budget.
+     *
+     * @throws IOException if an I/O error has occurred
+     */
+    public void evict() throws IOException {
+        if (Files.notExists(root)) {
+            return;
+        }
+
+        record Entry(Path path, long size, FileTime lastModified) {
+        }
+
+        var entries = new ArrayList<Entry>();
+        try (Stream<Path> stream = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) stream::iterator) {
+                var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    entries.add(new Entry(file, attributes.size(), attributes.lastModifiedTime()));
+                }
+            }
+        }
+
+        var total = entries.stream().mapToLong(Entry::size).sum();
+        entries.sort(Comparator.comparing(Entry::lastModified));
+
+        for (Entry entry : entries) {
+            if (total <= budget) {
+                break;
+            }
+            log.debug("Evicting {}", entry.path());
+            try {
+                Files.deleteIfExists(entry.path());
+                total -= entry.size();
+            } catch (IOException e) {
+                // Such as a file that another application still has open; it's evicted next time
+                log.warn("Unable to evict {}", entry.path(), e);
+            }
+        }
+
+        deleteEmptyDirectories(root);
+    }
+
+    private Path resolve(Path path, PsarcAsset asset) throws IOException {
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        var checksum = new CRC32();
+        checksum.update(path.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        checksum.update(ByteBuffer.allocate(Long.BYTES * 2)
+            .putLong(attributes.size())
+            .putLong(attributes.lastModifiedTime().toMillis())
+            .flip());
+
+        var format = HexFormat.of();
+        var archiveKey = format.toHexDigits((int) checksum.getValue());
+        var assetKey = format.toHexDigits(asset.fileOffset()) + '-' + format.toHexDigits(asset.uncompressedSize());
+
+        return root.resolve(archiveKey).resolve(assetKey).resolve(asset.id().fileName());
+    }
+
+    private static void deleteEmptyDirectories(Path root) throws IOException {
+        List<Path> directories;
+        try (Stream<Path> stream = Files.walk(root)) {
+            directories = stream.filter(Files::isDirectory).toList();
+        }
+        // Children come after their parents, so walk backwards
+        for (Path directory : directories.reversed()) {
+            if (directory.equals(root)) {
+                continue;
+            }
+            try (Stream<Path> stream = Files.list(directory)) {
+                if (stream.findAny().isEmpty()) {
+                    Files.delete(directory);
+                }
+            }
+        }
+    }
+
+    /**
+     * A channel that reports the number of bytes written through it.
+     */
+    private static final class ProgressChannel implements WritableByteChannel {
+        private final WritableByteChannel channel;
+        private final LongConsumer progress;
+        private long written;
+
+        ProgressChannel(WritableByteChannel channel, LongConsumer progress) {
+            this.channel = channel;
+            this.progress = progress;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int count = channel.write(src);
+            written += count;
+            progress.accept(written);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package sh.adelessfox.psarc.extract;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A journal of assets that were extracted into a directory.
+ * <p>
+ * The first line identifies the archive the assets were extracted from, so a journal
+ * left by another archive is never resumed. Each following line records the size, the checksum
+ * and the name of an extracted asset. Lines are only ever appended and each one is flushed
+ * as soon as it's written, so a journal cut short by a crash loses at most the entry
+ * that was being written.
+ * <p>
+ * A journal of a complete extraction is only kept when extracting
+ * {@linkplain ExtractOption#INCREMENTAL incrementally}.
+ */
+final class ExtractJournal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ExtractJournal.class);
+
+    static final String FILE_NAME = ".psarc-journal";
+
+    private static final String MAGIC = "psarc-journal 3";
+
+    private final Path path;
+    private final BufferedWriter writer;
+
+    private ExtractJournal(Path path, BufferedWriter writer) {
+        this.path = path;
+        this.writer = writer;
+    }
+
+    /**
+     * Opens a journal in the given directory.
+     *
+     * @param root        the directory the assets are extracted into
+     * @param fingerprint the fingerprint of the archive
+     * @param append      whether to append to an existing journal instead of starting over;
+     *                    the existing journal must have the same fingerprint
+     * @return the opened journal
+     * @throws IOException if an I/O error has occurred
+     */
+    static ExtractJournal open(Path root, long fingerprint, boolean append) throws IOException {
+        var path = root.resolve(FILE_NAME);
+        if (append && Files.exists(path)) {
+            return new ExtractJournal(path, Files.newBufferedWriter(path, WRITE, APPEND));
+        }
+        var writer = Files.newBufferedWriter(path, WRITE, CREATE, TRUNCATE_EXISTING);
+        writer.write(MAGIC + ' ' + HexFormat.of().toHexDigits(fingerprint) + '\n');
+        writer.flush();
+        return new ExtractJournal(path, writer);
+    }
+
+    /**
+     * Reads the journal in the given directory.
+     *
+     * @param root the directory the assets were extracted into
+     * @return the contents of the journal, or {@code null} if there's no journal
+     * @throws IOException if an I/O error has occurred
+     */
+    static State read(Path root) throws IOException {
+        var path = root.resolve(FILE_NAME);
+        FileTime lastModified;
+        String text;
+        try {
+            lastModified = Files.getLastModifiedTime(path);
+            text = Files.readString(path, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        var lines = text.split("\n", -1);
+        if (!lines[0].startsWith(MAGIC + ' ')) {
+            log.warn("Ignoring an unrecognized journal: {}", path);
+            return null;
+        }
+
+        var fingerprint = HexFormat.fromHexDigitsToLong(lines[0].substring(MAGIC.length() + 1));
+        var entries = new HashMap<String, Entry>();
+
+        // The last line is either empty or was cut short
+        for (int i = 1; i < lines.length - 1; i++) {
+            var line = lines[i];
+            int first = line.indexOf(' ');
+            int second = line.indexOf(' ', first + 1);
+            if (first < 0 || second < 0) {
+                log.warn("Malformed journal entry: {}", line);
+                continue;
+            }
+            entries.put(line.substring(second + 1), new Entry(
+                Long.parseLong(line, 0, first, 10),
+                Long.parseUnsignedLong(line, first + 1, second, 16)
+            ));
+        }
+
+        return new State(fingerprint, lastModified, entries);
+    }
+
+    /**
+     * Records an extracted asset.
+     *
+     * @param name  the name of the asset
+     * @param entry the size and the checksum of the asset
+     * @throws IOException if an I/O error has occurred
+     */
+    synchronized void add(String name, Entry entry) throws IOException {
+        writer.write(Long.toString(entry.size()));
+        writer.write(' ');
+        writer.write(Long.toHexString(entry.checksum()));
+        writer.write(' ');
+        writer.write(name);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    /**
+     * Closes and deletes the journal.
+     *
+     * @throws IOException if an I/O error has occurred
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * The contents of a journal.
+     *
+     * @param fingerprint  the fingerprint of the archive the assets were extracted from
+     * @param lastModified the time the journal was last written to
+     * @param entries      extracted assets by their names
+     */
+    record State(long fingerprint, FileTime lastModified, Map<String, Entry> entries) {
+    }
+
+    /**
+     * An extracted asset.
+     * <p>
+     * The checksum is computed over the asset's data as it's stored in the archive, so it doesn't depend
+     * on where the data is located. Assets with equal entries have equal contents, barring a collision,
+     * even if they come from different archives.
+     *
+     * @param size     the size of the asset
+     * @param checksum the checksum of the asset's data, or {@link #NO_CHECKSUM} if it wasn't computed
+     */
+    record Entry(long size, long checksum) {
+        static final long NO_CHECKSUM = -1;
+    }
+}
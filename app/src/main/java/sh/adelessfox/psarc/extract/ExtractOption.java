@@ -0,0 +1,52 @@
+package sh.adelessfox.psarc.extract;
+
+/**
+ * Options that configure how assets are extracted.
+ */
+public enum ExtractOption {
+    /**
+     * Compressed assets are decompressed straight into memory-mapped target files
+     * instead of being buffered in memory first.
+     */
+    MAPPED,
+
+    /**
+     * Assets recorded in the journal of a previous extraction that didn't complete are
+     * not extracted again, as long as their target files are still intact.
+     */
+    RESUME,
+
+    /**
+     * Assets whose target files already have the same contents are not written.
+     * <p>
+     * Files are first compared by size. A file is then unchanged if the journal of the previous
+     * incremental extraction records it as extracted from data with the same checksum, and the file
+     * wasn't modified since. Checksums are computed over the data as it's stored in the archive, so
+     * nothing is decompressed. Otherwise, the file is compared with the asset byte by byte.
+     * The journal is kept after the extraction completes.
+     */
+    INCREMENTAL,
+
+    /**
+     * Files recorded in the journal of the previous {@linkplain #INCREMENTAL incremental}
+     * extraction whose assets are no longer in the archive are deleted once the extraction completes.
+     * Only effective together with {@link #INCREMENTAL}.
+     */
+    DELETE_REMOVED,
+
+    /**
+     * Assets that point to the same data in the archive are decompressed and written once.
+     * The other assets are created as hard links to the written file, or as copies if the
+     * file system doesn't support hard links.
+     */
+    HARD_LINKS,
+
+    /**
+     * Target files are written with direct I/O, bypassing the page cache, so that extracting
+     * lots of data doesn't evict pages used by other processes. Takes precedence over {@link #MAPPED}.
+     * <p>
+     * If the file system doesn't support direct I/O, written data is flushed to the disk in
+     * bounded batches instead.
+     */
+    DIRECT
+}
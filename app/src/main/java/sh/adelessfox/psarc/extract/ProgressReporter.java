@@ -0,0 +1,132 @@
+package sh.adelessfox.psarc.extract;
+
+import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+import wtf.reversed.toolbox.type.FileSize;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A listener that aggregates the progress of an extraction and publishes it at a fixed rate.
+ * <p>
+ * Counting an extracted asset is cheap and never blocks, so the listener can be called
+ * from many threads at once. The consumer is called from a separate thread; the final
+ * progress is published when the reporter is closed.
+ */
+public final class ProgressReporter implements ArchiveExtractor.Listener, Closeable {
+    private static final double SMOOTHING = 0.3;
+
+    private final long totalFiles;
+    private final long totalBytes;
+    private final Consumer<Progress> consumer;
+    private final ScheduledExecutorService executor;
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    private long lastTime = System.nanoTime();
+    private long lastFiles;
+    private long lastBytes;
+    private double filesPerSecond = Double.NaN;
+    private double bytesPerSecond = Double.NaN;
+
+    /**
+     * Creates a reporter and starts publishing progress.
+     *
+     * @param totalFiles the total number of assets
+     * @param totalBytes the total size of assets, in bytes
+     * @param interval   the interval between published updates
+     * @param consumer   the consumer of published updates
+     */
+    public ProgressReporter(long totalFiles, long totalBytes, Duration interval, Consumer<Progress> consumer) {
+        this.totalFiles = totalFiles;
+        this.totalBytes = totalBytes;
+        this.consumer = consumer;
+        this.executor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("progress-reporter").daemon().factory());
+        this.executor.scheduleAtFixedRate(this::publish, interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void extracted(PsarcAsset asset) {
+        files.increment();
+        bytes.add(asset.uncompressedSize());
+    }
+
+    /**
+     * Stops publishing updates and publishes the final progress.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        publish();
+    }
+
+    private synchronized void publish() {
+        var time = System.nanoTime();
+        var files = this.files.sum();
+        var bytes = this.bytes.sum();
+        var seconds = (time - lastTime) / 1e9;
+
+        if (seconds > 0) {
+            filesPerSecond = smooth(filesPerSecond, (files - lastFiles) / seconds);
+            bytesPerSecond = smooth(bytesPerSecond, (bytes - lastBytes) / seconds);
+        }
+
+        lastTime = time;
+        lastFiles = files;
+        lastBytes = bytes;
+
+        Duration remaining = null;
+        if (bytesPerSecond > 0) {
+            remaining = Duration.ofSeconds(Math.round((totalBytes - bytes) / bytesPerSecond));
+        }
+
+        consumer.accept(new Progress(files, totalFiles, bytes, totalBytes, filesPerSecond, bytesPerSecond, remaining));
+    }
+
+    private static double smooth(double previous, double current) {
+        return Double.isNaN(previous) ? current : previous + (current - previous) * SMOOTHING;
+    }
+
+    /**
+     * A snapshot of the progress of an extraction.
+     *
+     * @param files          the number of assets extracted so far
+     * @param totalFiles     the total number of assets
+     * @param bytes          the size of assets extracted so far, in bytes
+     * @param totalBytes     the total size of assets, in bytes
+     * @param filesPerSecond the current number of assets extracted per second
+     * @param bytesPerSecond the current number of bytes extracted per second
+     * @param remaining      the estimated time until the extraction completes, or {@code null} if unknown
+     */
+    public record Progress(
+        long files,
+        long totalFiles,
+        long bytes,
+        long totalBytes,
+        double filesPerSecond,
+        double bytesPerSecond,
+        Duration remaining
+    ) {
+        /**
+         * Returns a human-readable summary of the rates and the remaining time.
+         */
+        public String format() {
+            var eta = remaining == null ? "unknown" : "%d:%02d:%02d".formatted(
+                remaining.toHours(),
+                remaining.toMinutesPart(),
+                remaining.toSecondsPart()
+            );
+            return "%.0f files/s, %s/s, ETA %s".formatted(
+                filesPerSecond,
+                FileSize.ofBytes(Math.round(bytesPerSecond)),
+                eta
+            );
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package sh.adelessfox.psarc.ui;
+
+import atlantafx.base.controls.Spacer;
+import javafx.application.Platform;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.*;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.BorderPane;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sh.adelessfox.psarc.util.ContentType;
+import sh.adelessfox.psarc.util.Filenames;
+import sh.adelessfox.psarc.util.LineIndex;
+import sh.adelessfox.psarc.util.PageCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.SequencedSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows contents of a file as a hex dump, text, or an image.
+ * <p>
+ * Contents are read in pages in the background. The hex dump and text only read the pages of
+ * rows that are displayed, and lines of text are found as the user scrolls down, so a file of
+ * any size is previewed right away, and only a bounded number of pages is kept in memory.
+ * Images are only shown if they're small enough to be read whole.
+ */
+public final class PreviewPane extends BorderPane {
+    private static final Logger log = LoggerFactory.getLogger(PreviewPane.class);
+
+    private static final int BYTES_PER_ROW = 16;
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int MAX_PAGES = 64;
+    private static final int MAX_PENDING_PAGES = 8;
+    private static final int LINES_PER_SCAN = 1000;
+    private static final long MAX_IMAGE_SIZE = 32L << 20;
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("png", "jpg", "jpeg", "gif", "bmp");
+    // Pages of displayed rows are read separately, so they're never queued behind a scan
+    private static final Executor pageLoader = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("preview-page-loader").daemon().factory());
+    private static final Executor scanner = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("preview-scanner").daemon().factory());
+
+    public enum Mode {
+        HEX,
+        TEXT,
+        IMAGE
+    }
+
+    private final ObjectProperty<Mode> mode = new SimpleObjectProperty<>(this, "mode", Mode.HEX);
+    private final ReadOnlyBooleanWrapper reading = new ReadOnlyBooleanWrapper(this, "reading");
+    private final ListView<Integer> hexView = new ListView<>();
+    private final ListView<Integer> textView = new ListView<>();
+    private final ImageView imageView = new ImageView();
+    private final ScrollPane imagePane = new ScrollPane(imageView);
+    private final Label placeholder = new Label();
+    private final Label nameLabel = new Label();
+    private final ToggleGroup modeGroup = new ToggleGroup();
+    private final ToggleButton imageButton;
+    private final ToolBar toolBar;
+
+    private int pendingReads;
+
+    private Content content;
+
+    public PreviewPane() {
+        hexView.getStyleClass().add("preview");
+        hexView.setCellFactory(_ -> new ListCell<>() {
+            @Override
+            protected void updateItem(Integer row, boolean empty) {
+                super.updateItem(row, empty);
+                setText(empty || content == null ? null : formatHexRow(content, row));
+            }
+        });
+
+        textView.getStyleClass().add("preview");
+        textView.setCellFactory(_ -> new ListCell<>() {
+            @Override
+            protected void updateItem(Integer row, boolean empty) {
+                super.updateItem(row, empty);
+                setText(empty || content == null ? null : formatTextRow(content, row));
+            }
+        });
+
+        imageView.setPreserveRatio(true);
+
+        var hexButton = createModeButton("Hex", Mode.HEX);
+        var textButton = createModeButton("Text", Mode.TEXT);
+        imageButton = createModeButton("Image", Mode.IMAGE);
+
+        modeGroup.selectedToggleProperty().addListener((_, oldValue, newValue) -> {
+            if (newValue == null) {
+                // One of the modes is always selected
+                oldValue.setSelected(true);
+            } else {
+                mode.set((Mode) newValue.getUserData());
+            }
+        });
+        mode.addListener((_, _, newValue) -> {
+            for (Toggle toggle : modeGroup.getToggles()) {
+                if (toggle.getUserData() == newValue) {
+                    modeGroup.selectToggle(toggle);
+                }
+            }
+            update();
+        });
+
+        toolBar = new ToolBar(nameLabel, new Spacer(), hexButton, textButton, imageButton);
+        toolBar.getStyleClass().add("border-bottom");
+        toolBar.setDisable(true);
+
+        setTop(toolBar);
+        clear();
+    }
+
+    /**
+     * Shows the contents of a file.
+     *
+     * @param name     the name of the file
+     * @param size     the size of the file in bytes
+     * @param pageSize the size of pages the contents are read in
+     * @param source   the source of the contents; called from a background thread
+     */
+    public void setContent(String name, long size, int pageSize, PageCache.Source source) {
+        discard();
+
+        content = new Content(name, source, new PageCache(source, size, pageSize, MAX_PAGES));
+        hexView.setItems(new RowList((int) Math.min(Integer.MAX_VALUE, (size + BYTES_PER_ROW - 1) / BYTES_PER_ROW)));
+        textView.setItems(content.rows);
+        imageView.setImage(null);
+        nameLabel.setText(name);
+        imageButton.setDisable(!content.isImage());
+        toolBar.setDisable(false);
+
+        if (content.isImage()) {
+            setMode(Mode.IMAGE);
+        } else {
+            setMode(Mode.HEX);
+            detectText(content);
+        }
+        update();
+    }
+
+    /**
+     * Stops showing the contents of a file.
+     */
+    public void clear() {
+        discard();
+
+        content = null;
+        hexView.setItems(null);
+        textView.setItems(null);
+        imageView.setImage(null);
+        nameLabel.setText(null);
+        toolBar.setDisable(true);
+        update();
+    }
+
+    public ObjectProperty<Mode> modeProperty() {
+        return mode;
+    }
+
+    /**
+     * Whether contents are being read in the background. Other reads from the same source can wait
+     * until it's {@code false}, so they don't delay the rows the user is looking at.
+     */
+    public ReadOnlyBooleanProperty readingProperty() {
+        return reading.getReadOnlyProperty();
+    }
+
+    public Mode getMode() {
+        return mode.get();
+    }
+
+    public void setMode(Mode mode) {
+        this.mode.set(mode);
+    }
+
+    private ToggleButton createModeButton(String text, Mode mode) {
+        var button = new ToggleButton(text);
+        button.setUserData(mode);
+        button.setToggleGroup(modeGroup);
+        button.setSelected(mode == this.mode.get());
+        return button;
+    }
+
+    private void update() {
+        var content = this.content;
+        if (content == null) {
+            showPlaceholder("Select a file to preview");
+            return;
+        }
+        switch (mode.get()) {
+            case HEX -> setCenter(hexView);
+            case TEXT -> {
+                setCenter(textView);
+                if (content.rows.isEmpty()) {
+                    scanLines(content);
+                }
+            }
+            case IMAGE -> {
+                if (!content.isImage()) {
+                    showPlaceholder("The file is too large to preview as an image");
+                } else if (content.image == null) {
+                    showPlaceholder("Loading\u2026");
+                    if (!content.imageRequested) {
+                        content.imageRequested = true;
+                        loadImage(content);
+                    }
+                } else if (content.image.isError()) {
+                    showPlaceholder("The image can't be decoded");
+                } else {
+                    imageView.setImage(content.image);
+                    setCenter(imagePane);
+                }
+            }
+        }
+    }
+
+    private void showPlaceholder(String text) {
+        placeholder.setText(text);
+        setCenter(placeholder);
+    }
+
+    private void discard() {
+        if (content != null) {
+            // Skip pages that were requested but not yet read
+            content.discarded = true;
+            synchronized (content.requested) {
+                content.requested.clear();
+            }
+        }
+    }
+
+    private String formatHexRow(Content content, int row) {
+        var position = (long) row * BYTES_PER_ROW;
+        var bytes = new byte[(int) Math.min(BYTES_PER_ROW, content.pages.size() - position)];
+        if (!content.pages.copyIfLoaded(position, bytes)) {
+            request(content, position, bytes.length);
+            return "%08X".formatted(position);
+        }
+
+        var builder = new StringBuilder(80).append("%08X ".formatted(position));
+        for (int i = 0; i < BYTES_PER_ROW; i++) {
+            builder.append(i == BYTES_PER_ROW / 2 ? "  " : " ");
+            builder.append(i < bytes.length ? "%02X".formatted(bytes[i]) : "  ");
+        }
+        builder.append("  ");
+        for (byte b : bytes) {
+            builder.append(b >= 0x20 && b < 0x7F ? (char) b : '.');
+        }
+        return builder.toString();
+    }
+
+    private String formatTextRow(Content content, int row) {
+        if (row == content.rows.size() - 1) {
+            // The last known line is displayed, so find more
+            scanLines(content);
+        }
+
+        var start = content.lines.start(row);
+        var end = content.lines.end(row);
+        if (start < 0 || end < 0) {
+            // Where the line is was forgotten along with its page
+            if (start < 0) {
+                request(content, content.lines.pageOf(row));
+            }
+            if (end < 0) {
+                request(content, content.lines.pageOf(row + 1));
+            }
+            return null;
+        }
+        var bytes = new byte[(int) (Math.min(end, start + MAX_LINE_LENGTH) - start)];
+        if (!content.pages.copyIfLoaded(start, bytes)) {
+            request(content, start, bytes.length);
+            return null;
+        }
+
+        var length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads pages that span a range in the background and refreshes the view once they're read.
+     * Only the most recently requested pages are read; the rest are likely scrolled past already.
+     */
+    private void request(Content content, long position, int length) {
+        var pages = content.pages;
+        var last = pages.pageOf(position + Math.max(length, 1) - 1);
+        for (long page = pages.pageOf(position); page <= last; page++) {
+            if (pages.getIfLoaded(page) == null) {
+                request(content, page);
+            }
+        }
+    }
+
+    private void request(Content content, long page) {
+        synchronized (content.requested) {
+            if (!content.requested.add(page)) {
+                return;
+            }
+            if (content.requested.size() > MAX_PENDING_PAGES) {
+                content.requested.removeFirst();
+            }
+        }
+
+        track(CompletableFuture.runAsync(() -> {
+            synchronized (content.requested) {
+                if (!content.requested.contains(page)) {
+                    return;
+                }
+            }
+            try {
+                content.pages.load(page);
+            } catch (IOException e) {
+                log.error("Error reading page {} of {}", page, content.name, e);
+                return;
+            } finally {
+                synchronized (content.requested) {
+                    content.requested.remove(page);
+                }
+            }
+            Platform.runLater(() -> {
+                if (this.content == content) {
+                    hexView.refresh();
+                    textView.refresh();
+                }
+            });
+        }, pageLoader));
+    }
+
+    private void scanLines(Content content) {
+        if (content.scanning || content.lines.isComplete() && content.rows.size() == content.lines.count()) {
+            return;
+        }
+        content.scanning = true;
+        track(CompletableFuture
+            .supplyAsync(() -> {
+                var target = content.lines.count() + LINES_PER_SCAN;
+                try {
+                    while (!content.discarded && content.lines.count() < target && content.lines.scan()) {
+                        // Keep scanning
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return content.lines.count();
+            }, scanner))
+            .thenAcceptAsync(count -> {
+                content.scanning = false;
+                content.rows.grow(count);
+            }, Platform::runLater)
+            .exceptionally(e -> {
+                log.error("Error finding lines of {}", content.name, e);
+                return null;
+            });
+    }
+
+    private void loadImage(Content content) {
+        track(CompletableFuture
+            .supplyAsync(() -> {
+                var data = new byte[Math.toIntExact(content.pages.size())];
+                try {
+                    content.source.read(0, ByteBuffer.wrap(data));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return new Image(new ByteArrayInputStream(data));
+            }, scanner))
+            .thenAcceptAsync(image -> {
+                content.image = image;
+                if (this.content == content) {
+                    update();
+                }
+            }, Platform::runLater)
+            .exceptionally(e -> {
+                log.error("Error loading image {}", content.name, e);
+                return null;
+            });
+    }
+
+    /**
+     * Switches to the text mode if the first page of the contents looks like text.
+     */
+    private void detectText(Content content) {
+        if (content.pages.size() == 0) {
+            return;
+        }
+        track(CompletableFuture
+            .supplyAsync(() -> {
+                try {
+                    return ContentType.detect(content.pages.load(0)).category() == ContentType.Category.TEXT;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, scanner))
+            .thenAcceptAsync(text -> {
+                if (text && this.content == content && getMode() == Mode.HEX) {
+                    setMode(Mode.TEXT);
+                }
+            }, Platform::runLater)
+            .exceptionally(e -> {
+                log.error("Error reading {}", content.name, e);
+                return null;
+            });
+    }
+
+    /**
+     * Keeps {@link #readingProperty()} set until a background read completes. Must be called from the FX thread.
+     */
+    private <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        pendingReads++;
+        reading.set(true);
+        future.whenCompleteAsync((_, _) -> reading.set(--pendingReads > 0), Platform::runLater);
+        return future;
+    }
+
+    private static final class Content {
+        final String name;
+        final PageCache.Source source;
+        final PageCache pages;
+        final LineIndex lines;
+        final RowList rows = new RowList(0);
+        final SequencedSet<Long> requested = new LinkedHashSet<>();
+        volatile boolean discarded;
+        boolean scanning;
+        boolean imageRequested;
+        Image image;
+
+        Content(String name, PageCache.Source source, PageCache pages) {
+            this.name = name;
+            this.source = source;
+            this.pages = pages;
+            this.lines = new LineIndex(pages);
+        }
+
+        boolean isImage() {
+            var extension = Filenames.getExtension(name).toLowerCase(Locale.ROOT);
+            return IMAGE_EXTENSIONS.contains(extension) && pages.size() <= MAX_IMAGE_SIZE;
+        }
+    }
+
+    /**
+     * A list of row indices that doesn't store them.
+     */
+    private static final class RowList extends ObservableListBase<Integer> {
+        private int size;
+
+        RowList(int size) {
+            this.size = size;
+        }
+
+        void grow(int size) {
+            if (size <= this.size) {
+                return;
+            }
+            var from = this.size;
+            this.size = size;
+            beginChange();
+            nextAdd(from, size);
+            endChange();
+        }
+
+        @Override
+        public Integer get(int index) {
+            Objects.checkIndex(index, size);
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
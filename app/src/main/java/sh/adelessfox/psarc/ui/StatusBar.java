@@ -1,15 +1,10 @@
 package sh.adelessfox.psarc.ui;
 
 import javafx.beans.binding.Bindings;
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleObjectProperty;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
+import javafx.beans.property.*;
 import javafx.geometry.Orientation;
 import javafx.scene.Node;
-import javafx.scene.control.Label;
-import javafx.scene.control.Separator;
-import javafx.scene.control.Tooltip;
+import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
@@ -17,10 +12,13 @@ import wtf.reversed.toolbox.type.FileCount;
 import wtf.reversed.toolbox.type.FileSize;
 
 public final class StatusBar extends HBox {
+    private static final long[] RATE_LIMITS = {0, 1L << 20, 10L << 20, 50L << 20, 100L << 20, 500L << 20};
+
     private final ObjectProperty<Node> graphic = new SimpleObjectProperty<>(this, "graphic");
     private final StringProperty message = new SimpleStringProperty(this, "message");
     private final ObjectProperty<FileCount> totalFiles = new SimpleObjectProperty<>(this, "totalFiles", FileCount.ZERO);
     private final ObjectProperty<FileSize> totalSize = new SimpleObjectProperty<>(this, "totalSize", FileSize.ZERO);
+    private final LongProperty rateLimit = new SimpleLongProperty(this, "rateLimit");
 
     public StatusBar() {
         BorderPane graphicHolder = new BorderPane();
@@ -43,11 +41,27 @@ public final class StatusBar extends HBox {
         sizeLabel.textProperty().bind(totalSize.asString());
         sizeLabel.setMinWidth(USE_PREF_SIZE);
 
+        MenuButton rateLimitButton = new MenuButton();
+        rateLimitButton.textProperty().bind(rateLimit.map(value -> "I/O: " + formatRateLimit(value.longValue())));
+        rateLimitButton.setTooltip(new Tooltip("Limit the rate of reading and writing during extraction"));
+        rateLimitButton.setMinWidth(USE_PREF_SIZE);
+
+        ToggleGroup rateLimitGroup = new ToggleGroup();
+        for (long limit : RATE_LIMITS) {
+            RadioMenuItem item = new RadioMenuItem(formatRateLimit(limit));
+            item.setToggleGroup(rateLimitGroup);
+            item.setSelected(limit == rateLimit.get());
+            item.setOnAction(_ -> rateLimit.set(limit));
+            rateLimitButton.getItems().add(item);
+        }
+
         getStyleClass().add("status-bar");
         getChildren().setAll(
             graphicHolder,
             messageLabel,
             new Separator(Orientation.VERTICAL),
+            rateLimitButton,
+            new Separator(Orientation.VERTICAL),
             filesLabel,
             new Separator(Orientation.VERTICAL),
             sizeLabel
@@ -62,6 +76,10 @@ public final class StatusBar extends HBox {
         return message;
     }
 
+    public LongProperty rateLimitProperty() {
+        return rateLimit;
+    }
+
     public void setTotalFiles(FileCount totalFiles) {
         this.totalFiles.set(totalFiles);
     }
@@ -69,4 +87,8 @@ public final class StatusBar extends HBox {
     public void setTotalSize(FileSize totalSize) {
         this.totalSize.set(totalSize);
     }
+
+    private static String formatRateLimit(long limit) {
+        return limit == 0 ? "Unlimited" : FileSize.ofBytes(limit) + "/s";
+    }
 }
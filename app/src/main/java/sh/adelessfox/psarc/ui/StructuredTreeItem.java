@@ -1,24 +1,54 @@
 package sh.adelessfox.psarc.ui;
 
+import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.scene.control.TreeItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
+/**
+ * A tree item whose children are taken from a {@link TreeStructure}.
+ * <p>
+ * Children are computed in the background when the item is first expanded, and are then added
+ * in pages: the next page is added once the last added child is {@linkplain #shown() shown}.
+ * Only the children the user has scrolled to are therefore turned into tree items.
+ * <p>
+ * Children can be {@linkplain #sort(Comparator) sorted}. Only children that are already
+ * loaded are sorted right away; the rest are sorted when they're loaded.
+ */
 public final class StructuredTreeItem<T extends TreeStructure<T>> extends TreeItem<T> {
+    private static final Logger log = LoggerFactory.getLogger(StructuredTreeItem.class);
+
+    private static final int PAGE_SIZE = 500;
+    private static final Executor executor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("tree-loader").daemon().factory());
+
     private boolean isFirstTimeChildren = true;
     private boolean isFirstTimeLeaf = true;
     private boolean isLeaf;
 
+    private List<? extends T> children;
+    private Comparator<? super T> comparator;
+    private boolean isPageRequested;
+
     public StructuredTreeItem(T structure) {
         super(structure);
+        setExpanded(structure.isExpanded());
     }
 
     @Override
     public ObservableList<TreeItem<T>> getChildren() {
         if (isFirstTimeChildren) {
             isFirstTimeChildren = false;
-            super.getChildren().setAll(buildChildren());
+            loadChildren();
         }
         return super.getChildren();
     }
@@ -32,9 +62,112 @@ public final class StructuredTreeItem<T extends TreeStructure<T>> extends TreeIt
         return isLeaf;
     }
 
-    private List<? extends TreeItem<T>> buildChildren() {
-        return getValue().getChildren().stream()
-            .map(StructuredTreeItem::new)
-            .toList();
+    /**
+     * Notifies this item that it's displayed. If it's the last child added to its parent,
+     * the next page of children is added to the parent.
+     */
+    public void shown() {
+        if (getParent() instanceof StructuredTreeItem<T> parent) {
+            parent.childShown(this);
+        }
+    }
+
+    private void childShown(TreeItem<T> child) {
+        var items = super.getChildren();
+        if (isPageRequested || children == null || items.size() >= children.size() || items.getLast() != child) {
+            return;
+        }
+        // Cells are updated during layout, so the tree can't be changed right away
+        isPageRequested = true;
+        Platform.runLater(this::addNextPage);
+    }
+
+    /**
+     * Sorts children of this item and of all its descendants. Sorting by an equal comparator does nothing.
+     *
+     * @param comparator the comparator, or {@code null} to keep the order of the structure
+     */
+    public void sort(Comparator<? super T> comparator) {
+        if (Objects.equals(this.comparator, comparator)) {
+            return;
+        }
+        this.comparator = comparator;
+        if (!isFirstTimeChildren) {
+            loadChildren();
+        }
+        for (TreeItem<T> item : super.getChildren()) {
+            if (item instanceof StructuredTreeItem<T> child) {
+                child.sort(comparator);
+            }
+        }
+    }
+
+    private void loadChildren() {
+        var structure = getValue();
+        if (!structure.hasChildren()) {
+            return;
+        }
+        var comparator = this.comparator;
+        CompletableFuture.supplyAsync(() -> sorted(structure.getChildren(), comparator), executor)
+            .thenAcceptAsync(children -> {
+                // Skip the result if the children were sorted differently in the meantime
+                if (this.comparator == comparator) {
+                    setChildren(children);
+                }
+            }, Platform::runLater)
+            .exceptionally(e -> {
+                log.error("Error computing children of {}", structure, e);
+                return null;
+            });
+    }
+
+    private void setChildren(List<? extends T> children) {
+        this.children = children;
+
+        var items = super.getChildren();
+        if (items.isEmpty()) {
+            addNextPage();
+            return;
+        }
+
+        // Keep as many children as there were, reusing their items so that they stay expanded
+        var existing = new IdentityHashMap<T, TreeItem<T>>();
+        for (TreeItem<T> item : items) {
+            existing.put(item.getValue(), item);
+        }
+
+        isPageRequested = false;
+        items.setAll(children.subList(0, Math.min(items.size(), children.size())).stream()
+            .map(child -> {
+                var item = existing.get(child);
+                return item != null ? item : createItem(child);
+            })
+            .toList());
+    }
+
+    private void addNextPage() {
+        var items = super.getChildren();
+        var from = items.size();
+        var to = Math.min(from + PAGE_SIZE, children.size());
+
+        isPageRequested = false;
+        items.addAll(children.subList(from, to).stream()
+            .map(this::createItem)
+            .toList());
+    }
+
+    private TreeItem<T> createItem(T structure) {
+        var item = new StructuredTreeItem<>(structure);
+        item.comparator = comparator;
+        return item;
+    }
+
+    private static <T> List<? extends T> sorted(List<? extends T> children, Comparator<? super T> comparator) {
+        if (comparator == null) {
+            return children;
+        }
+        var result = new ArrayList<T>(children);
+        result.sort(comparator);
+        return result;
     }
 }
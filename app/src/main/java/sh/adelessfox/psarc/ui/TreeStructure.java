@@ -6,4 +6,11 @@ public interface TreeStructure<T extends TreeStructure<T>> {
     List<? extends T> getChildren();
 
     boolean hasChildren();
-}
\ No newline at end of file
+
+    /**
+     * Returns whether the item is initially expanded.
+     */
+    default boolean isExpanded() {
+        return false;
+    }
+}
@@ -0,0 +1,223 @@
+package sh.adelessfox.psarc.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The type of contents of a file, detected from its first bytes rather than its name.
+ *
+ * @param format  the format of the file
+ * @param payload the format of the data compressed within the file, or {@code null} if it's not compressed
+ */
+public record ContentType(Format format, Format payload) {
+    /**
+     * Detects the type of contents from their first bytes. A few hundred bytes are enough for any format.
+     *
+     * @param data the first bytes of contents, or all of them if the contents are shorter
+     * @return the type of contents
+     */
+    public static ContentType detect(byte[] data) {
+        var format = Format.detect(data);
+        if (format != Format.ZLIB) {
+            return new ContentType(format, null);
+        }
+
+        var inflated = inflate(data);
+        if (inflated == null || inflated.length == 0) {
+            // Not a zlib stream after all, such as text that starts with "x "
+            return new ContentType(Format.isText(data) ? Format.TEXT : Format.BINARY, null);
+        }
+        return new ContentType(format, Format.detect(inflated));
+    }
+
+    public Category category() {
+        return format.category;
+    }
+
+    @Override
+    public String toString() {
+        return payload == null ? format.description : format.description + " (" + payload.description + ")";
+    }
+
+    private static byte[] inflate(byte[] data) {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            var output = new byte[data.length * 4];
+            var length = inflater.inflate(output);
+            return Arrays.copyOf(output, length);
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public enum Category {
+        AUDIO,
+        VIDEO,
+        IMAGE,
+        TEXT,
+        ARCHIVE,
+        BINARY
+    }
+
+    public enum Format {
+        DDS("DDS texture", Category.IMAGE),
+        PNG("PNG image", Category.IMAGE),
+        JPEG("JPEG image", Category.IMAGE),
+        GIF("GIF image", Category.IMAGE),
+        BMP("BMP image", Category.IMAGE),
+        WEM("Wwise audio", Category.AUDIO),
+        WAV("Wave audio", Category.AUDIO),
+        BNK("Wwise sound bank", Category.AUDIO),
+        FSB("FMOD sound bank", Category.AUDIO),
+        OGG("Ogg audio", Category.AUDIO),
+        BINK("Bink video", Category.VIDEO),
+        USM("CRI video", Category.VIDEO),
+        MP4("MPEG-4 video", Category.VIDEO),
+        MATROSKA("Matroska video", Category.VIDEO),
+        PSARC("PlayStation archive", Category.ARCHIVE),
+        ZIP("ZIP archive", Category.ARCHIVE),
+        GZIP("gzip stream", Category.ARCHIVE),
+        ZLIB("zlib stream", Category.ARCHIVE),
+        ZSTD("Zstandard stream", Category.ARCHIVE),
+        XML("XML document", Category.TEXT),
+        JSON("JSON document", Category.TEXT),
+        TEXT("Text", Category.TEXT),
+        EMPTY("Empty", Category.BINARY),
+        BINARY("Binary", Category.BINARY);
+
+        private final String description;
+        private final Category category;
+
+        Format(String description, Category category) {
+            this.description = description;
+            this.category = category;
+        }
+
+        public String description() {
+            return description;
+        }
+
+        public Category category() {
+            return category;
+        }
+
+        private static Format detect(byte[] data) {
+            if (data.length == 0) {
+                return EMPTY;
+            }
+            if (startsWith(data, 0, "DDS ")) {
+                return DDS;
+            }
+            if (startsWith(data, 0, 0x89, 'P', 'N', 'G')) {
+                return PNG;
+            }
+            if (startsWith(data, 0, 0xFF, 0xD8, 0xFF)) {
+                return JPEG;
+            }
+            if (startsWith(data, 0, "GIF8")) {
+                return GIF;
+            }
+            if (startsWith(data, 0, "BM") && startsWith(data, 6, 0, 0, 0, 0)) {
+                return BMP;
+            }
+            if ((startsWith(data, 0, "RIFF") || startsWith(data, 0, "RIFX")) && startsWith(data, 8, "WAVE")) {
+                // Wwise uses a format tag of its own
+                return startsWith(data, 20, 0xFF, 0xFF) ? WEM : WAV;
+            }
+            if (startsWith(data, 0, "BKHD")) {
+                return BNK;
+            }
+            if (startsWith(data, 0, "FSB5")) {
+                return FSB;
+            }
+            if (startsWith(data, 0, "OggS")) {
+                return OGG;
+            }
+            if (startsWith(data, 0, "BIK") || startsWith(data, 0, "KB2")) {
+                return BINK;
+            }
+            if (startsWith(data, 0, "CRID")) {
+                return USM;
+            }
+            if (startsWith(data, 4, "ftyp")) {
+                return MP4;
+            }
+            if (startsWith(data, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+                return MATROSKA;
+            }
+            if (startsWith(data, 0, "PSAR")) {
+                return PSARC;
+            }
+            if (startsWith(data, 0, 'P', 'K', 3, 4)) {
+                return ZIP;
+            }
+            if (startsWith(data, 0, 0x1F, 0x8B)) {
+                return GZIP;
+            }
+            if (startsWith(data, 0, 0x28, 0xB5, 0x2F, 0xFD)) {
+                return ZSTD;
+            }
+            if (data.length >= 2 && (data[0] & 0x8F) == 0x08 && ((data[0] & 0xFF) << 8 | data[1] & 0xFF) % 31 == 0) {
+                // Deflate with a window of at most 32 KiB and a valid header checksum
+                return ZLIB;
+            }
+            if (isText(data)) {
+                var text = new String(data, StandardCharsets.UTF_8);
+                if (text.startsWith("\uFEFF")) {
+                    text = text.substring(1);
+                }
+                text = text.stripLeading();
+                if (text.startsWith("<?xml")) {
+                    return XML;
+                }
+                if (text.startsWith("{") || text.startsWith("[")) {
+                    return JSON;
+                }
+                return TEXT;
+            }
+            return BINARY;
+        }
+
+        private static boolean isText(byte[] data) {
+            var control = 0;
+            for (byte b : data) {
+                if (b == 0) {
+                    return false;
+                }
+                if (b >= 0 && b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1B) {
+                    control++;
+                }
+            }
+            return control * 100 <= data.length;
+        }
+
+        private static boolean startsWith(byte[] data, int offset, String prefix) {
+            if (data.length < offset + prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (data[offset + i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean startsWith(byte[] data, int offset, int... prefix) {
+            if (data.length < offset + prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if ((data[offset + i] & 0xFF) != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package sh.adelessfox.psarc.util;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
-public record FilePath(List<String> segments) implements Comparable<FilePath> {
-    private static final String ANY_MARK = "*";
-    private static final FilePath EMPTY = new FilePath(List.of());
-    private static final FilePath ANY = new FilePath(List.of(ANY_MARK));
+/**
+ * A path made of segments.
+ * <p>
+ * Paths stored in a {@link PathTree} share equal segments through the tree's {@link SegmentTable},
+ * so names that repeat across many paths, such as names of folders, are stored once per tree,
+ * and comparing such paths mostly boils down to comparing references.
+ */
+public final class FilePath implements Comparable<FilePath> {
+    private static final FilePath EMPTY = new FilePath(new String[0]);
 
-    public FilePath {
-        segments = List.copyOf(segments);
+    private final String[] segments;
+
+    FilePath(String[] segments) {
+        this.segments = segments;
     }
 
     public static FilePath of(String path, String separator) {
@@ -20,17 +27,23 @@ public record FilePath(List<String> segments) implements Comparable<FilePath> {
         String[] segments = path.split(separator);
         if (segments.length == 1 && segments[0].isEmpty()) {
             return EMPTY;
-        } else {
-            return new FilePath(List.of(segments));
         }
+        return new FilePath(segments);
     }
 
-    public static FilePath of() {
-        return EMPTY;
+    public static FilePath of(List<String> segments) {
+        if (segments.isEmpty()) {
+            return EMPTY;
+        }
+        var result = new String[segments.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Objects.requireNonNull(segments.get(i));
+        }
+        return new FilePath(result);
     }
 
-    public static FilePath any() {
-        return ANY;
+    public static FilePath of() {
+        return EMPTY;
     }
 
     public FilePath resolve(FilePath other) {
@@ -40,9 +53,14 @@ public record FilePath(List<String> segments) implements Comparable<FilePath> {
         if (other.isEmpty()) {
             return this;
         }
-        List<String> result = new ArrayList<>(length() + other.length());
-        result.addAll(segments);
-        result.addAll(other.segments);
+        String[] result = Arrays.copyOf(segments, segments.length + other.segments.length);
+        System.arraycopy(other.segments, 0, result, segments.length, other.segments.length);
+        return new FilePath(result);
+    }
+
+    public FilePath resolve(String segment) {
+        String[] result = Arrays.copyOf(segments, segments.length + 1);
+        result[segments.length] = Objects.requireNonNull(segment);
         return new FilePath(result);
     }
 
@@ -57,12 +75,12 @@ public record FilePath(List<String> segments) implements Comparable<FilePath> {
         } else if (beginIndex == 0 && endIndex == length()) {
             return this;
         } else {
-            return new FilePath(segments.subList(beginIndex, endIndex));
+            return new FilePath(Arrays.copyOfRange(segments, beginIndex, endIndex));
         }
     }
 
     public String get(int index) {
-        return segments.get(index);
+        return segments[index];
     }
 
     public String full() {
@@ -74,19 +92,29 @@ public record FilePath(List<String> segments) implements Comparable<FilePath> {
     }
 
     public String first() {
-        return segments.getFirst();
+        return get(0);
     }
 
     public String last() {
-        return segments.getLast();
+        return get(segments.length - 1);
     }
 
     public int length() {
-        return segments.size();
+        return segments.length;
     }
 
     public boolean isEmpty() {
-        return segments.isEmpty();
+        return segments.length == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FilePath that && Arrays.equals(segments, that.segments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(segments);
     }
 
     @Override
@@ -96,24 +124,18 @@ public record FilePath(List<String> segments) implements Comparable<FilePath> {
 
     @Override
     public int compareTo(FilePath o) {
-        int length = Math.min(segments.size(), o.segments.size());
+        int length = Math.min(segments.length, o.segments.length);
         for (int i = 0; i < length; i++) {
-            var a = segments.get(i);
-            if (a.equals(ANY_MARK)) {
-                return 1;
-            }
-
-            var b = o.segments.get(i);
-            if (b.equals(ANY_MARK)) {
-                return -1;
-            }
-
-            var value = a.compareTo(b);
-            if (value != 0) {
-                return value;
+            String a = segments[i];
+            String b = o.segments[i];
+            if (a != b) {
+                int result = a.compareTo(b);
+                if (result != 0) {
+                    return result;
+                }
             }
         }
 
-        return segments.size() - o.segments.size();
+        return segments.length - o.segments.length;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,189 @@
+package sh.adelessfox.psarc.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Finds where lines of text start, scanning contents one page at a time as more lines are needed.
+ * <p>
+ * Lines are terminated by {@code \n}; a preceding {@code \r} is left to the caller. Only the lines
+ * within {@linkplain #scan() scanned} pages are known, except for the last line of each scanned page,
+ * which may continue on the next one.
+ * <p>
+ * Only a checkpoint per scanned page is kept: the number of lines before the page and where the first
+ * of its lines ends. Exact positions of lines are kept for a few recently used pages, and are found
+ * again from the page cache for the rest, so the index takes a bounded amount of memory per page
+ * rather than per line.
+ * <p>
+ * Lines can be queried from any thread while another thread scans.
+ */
+public final class LineIndex {
+    private static final int WINDOW_PAGES = 16;
+
+    private final PageCache pages;
+    private final Map<Long, int[]> window = new LinkedHashMap<>(WINDOW_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > WINDOW_PAGES;
+        }
+    };
+
+    // The number of lines that start before or at the start of each page, and the position of each page's first terminator
+    private int[] linesBefore = new int[64];
+    private int[] firstTerminator = new int[64];
+    private int scanned;
+    private boolean endsWithTerminator;
+
+    public LineIndex(PageCache pages) {
+        this.pages = pages;
+        this.linesBefore[0] = 1;
+    }
+
+    /**
+     * Scans the next page for lines.
+     *
+     * @return {@code true} if there are more pages to scan
+     * @throws IOException if an I/O error has occurred
+     */
+    public boolean scan() throws IOException {
+        long page;
+        synchronized (this) {
+            if (isComplete()) {
+                return false;
+            }
+            page = scanned;
+        }
+
+        var data = pages.load(page);
+        var terminators = findTerminators(data);
+
+        synchronized (this) {
+            if (scanned + 2 > linesBefore.length) {
+                linesBefore = Arrays.copyOf(linesBefore, linesBefore.length * 2);
+                firstTerminator = Arrays.copyOf(firstTerminator, firstTerminator.length * 2);
+            }
+            linesBefore[scanned + 1] = linesBefore[scanned] + terminators.length;
+            firstTerminator[scanned] = terminators.length > 0 ? terminators[0] : -1;
+            window.put(page, terminators);
+            scanned++;
+            if (isComplete()) {
+                endsWithTerminator = data.length > 0 && data[data.length - 1] == '\n';
+            }
+            return !isComplete();
+        }
+    }
+
+    /**
+     * Checks whether all pages were scanned.
+     */
+    public synchronized boolean isComplete() {
+        return scanned == pages.pageCount();
+    }
+
+    /**
+     * Returns the number of known lines.
+     */
+    public synchronized int count() {
+        var size = linesBefore[scanned];
+        if (!isComplete()) {
+            return size - 1;
+        }
+        // Text that ends with a line terminator doesn't have an empty last line
+        return size > 1 && endsWithTerminator ? size - 1 : size;
+    }
+
+    /**
+     * Returns the index of the page that must be {@linkplain PageCache#load loaded} to find where a line starts,
+     * which is also where the preceding line ends.
+     */
+    public synchronized long pageOf(int line) {
+        return line == 0 ? 0 : findPage(line);
+    }
+
+    /**
+     * Returns the position of the first byte of a line.
+     *
+     * @return the position, or {@code -1} if the {@linkplain #pageOf page} of the line isn't loaded
+     */
+    public synchronized long start(int line) {
+        if (line == 0) {
+            return 0;
+        }
+        var page = findPage(line);
+        var terminators = terminators(page);
+        if (terminators == null) {
+            return -1;
+        }
+        return page * pages.pageSize() + terminators[line - linesBefore[page]] + 1;
+    }
+
+    /**
+     * Returns the position after the last byte of a line, excluding the line terminator.
+     *
+     * @return the position, or {@code -1} if the {@linkplain #pageOf page} of the line isn't loaded
+     */
+    public synchronized long end(int line) {
+        var next = line + 1;
+        if (next >= linesBefore[scanned]) {
+            return pages.size();
+        }
+        var page = findPage(next);
+        var index = next - linesBefore[page];
+        if (index == 0) {
+            // The first terminator of each page is always known
+            return page * pages.pageSize() + firstTerminator[page];
+        }
+        var terminators = terminators(page);
+        if (terminators == null) {
+            return -1;
+        }
+        return page * pages.pageSize() + terminators[index];
+    }
+
+    /**
+     * Returns the page that contains the terminator of the line preceding the given one.
+     */
+    private int findPage(int line) {
+        // The last page whose preceding lines don't include the given one
+        int low = 0;
+        int high = scanned - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (linesBefore[mid] <= line) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int[] terminators(long page) {
+        var terminators = window.get(page);
+        if (terminators == null) {
+            var data = pages.getIfLoaded(page);
+            if (data == null) {
+                return null;
+            }
+            terminators = findTerminators(data);
+            window.put(page, terminators);
+        }
+        return terminators;
+    }
+
+    private static int[] findTerminators(byte[] data) {
+        var found = new int[64];
+        var count = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n') {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = i;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+}
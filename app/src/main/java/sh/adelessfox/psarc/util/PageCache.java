@@ -0,0 +1,150 @@
+package sh.adelessfox.psarc.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of fixed-size pages of contents that are read on demand.
+ * <p>
+ * Only the pages that are asked for are read, and only the most recently used ones
+ * are kept, so contents of any size can be browsed using a bounded amount of memory.
+ * <p>
+ * The cache is safe to use from multiple threads. Pages are read outside the lock,
+ * so a page that is being read doesn't block other threads from using loaded ones.
+ */
+public final class PageCache {
+    private final Source source;
+    private final long size;
+    private final int pageSize;
+    private final Map<Long, byte[]> pages;
+
+    /**
+     * Creates a cache.
+     *
+     * @param source   the source of contents
+     * @param size     the size of contents in bytes
+     * @param pageSize the size of a page in bytes
+     * @param capacity the maximum number of pages to keep
+     */
+    public PageCache(Source source, long size, int pageSize, int capacity) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative, was " + size);
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive, was " + pageSize);
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive, was " + capacity);
+        }
+        this.source = source;
+        this.size = size;
+        this.pageSize = pageSize;
+        this.pages = new LinkedHashMap<>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the size of contents in bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the size of a page in bytes. The last page may be shorter.
+     */
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the number of pages.
+     */
+    public long pageCount() {
+        return (size + pageSize - 1) / pageSize;
+    }
+
+    /**
+     * Returns the index of the page that contains the given position.
+     */
+    public long pageOf(long position) {
+        return position / pageSize;
+    }
+
+    /**
+     * Returns a page if it's loaded.
+     *
+     * @param page the index of the page
+     * @return the contents of the page, or {@code null} if it's not loaded
+     */
+    public synchronized byte[] getIfLoaded(long page) {
+        return pages.get(page);
+    }
+
+    /**
+     * Returns a page, reading it if it's not loaded.
+     *
+     * @param page the index of the page
+     * @return the contents of the page
+     * @throws IOException if an I/O error has occurred
+     */
+    public byte[] load(long page) throws IOException {
+        var data = getIfLoaded(page);
+        if (data != null) {
+            return data;
+        }
+
+        var position = page * pageSize;
+        var length = (int) Math.min(pageSize, size - position);
+        data = new byte[length];
+        source.read(position, ByteBuffer.wrap(data));
+
+        synchronized (this) {
+            pages.put(page, data);
+        }
+
+        return data;
+    }
+
+    /**
+     * Copies a range of contents if all pages it spans are loaded.
+     *
+     * @param position the position to start copying from
+     * @param target   the array to copy into; its length is the length of the range
+     * @return {@code true} if the range was copied, {@code false} if some of its pages aren't loaded
+     */
+    public synchronized boolean copyIfLoaded(long position, byte[] target) {
+        for (int offset = 0; offset < target.length; ) {
+            var page = pages.get(pageOf(position + offset));
+            if (page == null) {
+                return false;
+            }
+            var skip = (int) ((position + offset) % pageSize);
+            var count = Math.min(page.length - skip, target.length - offset);
+            System.arraycopy(page, skip, target, offset, count);
+            offset += count;
+        }
+        return true;
+    }
+
+    /**
+     * Reads ranges of contents.
+     */
+    @FunctionalInterface
+    public interface Source {
+        /**
+         * Reads exactly {@code target.remaining()} bytes starting at the given position.
+         *
+         * @param position the position to start reading from
+         * @param target   the buffer to read into
+         * @throws IOException if an I/O error has occurred
+         */
+        void read(long position, ByteBuffer target) throws IOException;
+    }
+}
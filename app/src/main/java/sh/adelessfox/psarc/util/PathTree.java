@@ -0,0 +1,223 @@
+package sh.adelessfox.psarc.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A compressed tree of paths, where each value is stored under the folder of its path.
+ * <p>
+ * Folders that contain nothing but a single folder are merged with it, so a chain such as
+ * {@code a/b/c} is a single node whose {@linkplain Node#label() label} has three segments.
+ * Looking up a path takes time proportional to its length, and listing a folder takes time
+ * proportional to the number of its children.
+ * <p>
+ * Every folder keeps the number of values it contains along with their total weight,
+ * such as the total size of files.
+ * <p>
+ * Equal segments of stored paths share a single string that belongs to the tree.
+ *
+ * @param <T> the type of values
+ */
+public final class PathTree<T> {
+    private final ToLongFunction<? super T> weigher;
+    private final SegmentTable segments = new SegmentTable();
+    private final Node<T> root = new Node<>(null, FilePath.of());
+
+    public PathTree() {
+        this(_ -> 0);
+    }
+
+    public PathTree(ToLongFunction<? super T> weigher) {
+        this.weigher = weigher;
+    }
+
+    /**
+     * Associates the value with the path, replacing the previous value, if any.
+     *
+     * @param path  the path of the value; must not be empty
+     * @param value the value
+     * @return the previous value, or {@code null} if there was none
+     */
+    public T put(FilePath path, T value) {
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("path must not be empty");
+        }
+
+        path = segments.intern(path);
+
+        var previous = get(path);
+        var count = previous == null ? 1 : 0;
+        var weight = weigher.applyAsLong(value) - (previous == null ? 0 : weigher.applyAsLong(previous));
+
+        var node = root;
+        var folders = path.length() - 1;
+        node.add(count, weight);
+
+        for (int i = 0; i < folders; ) {
+            var child = node.folders.get(path.get(i));
+            if (child == null) {
+                child = new Node<>(node, path.subpath(i, folders));
+                node.folders.put(path.get(i), child);
+                child.add(count, weight);
+                node = child;
+                break;
+            }
+
+            int matched = child.match(path, i, folders);
+            if (matched < child.label.length()) {
+                child = child.split(matched);
+            }
+
+            child.add(count, weight);
+            node = child;
+            i += matched;
+        }
+
+        node.files.put(path.last(), value);
+        return previous;
+    }
+
+    /**
+     * Returns the value associated with the path.
+     *
+     * @param path the path of the value
+     * @return the value, or {@code null} if there's none
+     */
+    public T get(FilePath path) {
+        if (path.isEmpty()) {
+            return null;
+        }
+        var node = find(path.subpath(0, path.length() - 1), true);
+        return node != null ? node.files.get(path.last()) : null;
+    }
+
+    /**
+     * Returns the folder that contains everything under the given path.
+     * <p>
+     * If the path ends in the middle of a merged folder, the merged folder is returned,
+     * so its {@linkplain Node#path() path} may be longer than the given one.
+     *
+     * @param path the path of the folder
+     * @return the folder, or {@code null} if nothing is stored under the path
+     */
+    public Node<T> find(FilePath path) {
+        return find(path, false);
+    }
+
+    /**
+     * Returns the root folder of the tree.
+     */
+    public Node<T> root() {
+        return root;
+    }
+
+    private Node<T> find(FilePath path, boolean exact) {
+        var node = root;
+        for (int i = 0; i < path.length(); ) {
+            var child = node.folders.get(path.get(i));
+            if (child == null) {
+                return null;
+            }
+            int matched = child.match(path, i, path.length());
+            if (matched < child.label.length() && (exact || i + matched < path.length())) {
+                return null;
+            }
+            node = child;
+            i += matched;
+        }
+        return node;
+    }
+
+    /**
+     * A folder of the tree.
+     *
+     * @param <T> the type of values
+     */
+    public static final class Node<T> {
+        private final Map<String, Node<T>> folders = new HashMap<>();
+        private final Map<String, T> files = new HashMap<>();
+        private Node<T> parent;
+        private FilePath label;
+        private int count;
+        private long weight;
+
+        private Node(Node<T> parent, FilePath label) {
+            this.parent = parent;
+            this.label = label;
+        }
+
+        /**
+         * Returns the full path of this folder.
+         */
+        public FilePath path() {
+            return parent == null ? label : parent.path().resolve(label);
+        }
+
+        /**
+         * Returns the path of this folder relative to its parent folder.
+         */
+        public FilePath label() {
+            return label;
+        }
+
+        /**
+         * Returns the folders directly within this folder.
+         */
+        public Collection<Node<T>> folders() {
+            return Collections.unmodifiableCollection(folders.values());
+        }
+
+        /**
+         * Returns the values directly within this folder by their names.
+         */
+        public Map<String, T> files() {
+            return Collections.unmodifiableMap(files);
+        }
+
+        /**
+         * Returns the number of values within this folder and all its subfolders.
+         */
+        public int count() {
+            return count;
+        }
+
+        /**
+         * Returns the total weight of values within this folder and all its subfolders.
+         */
+        public long weight() {
+            return weight;
+        }
+
+        private void add(int count, long weight) {
+            this.count += count;
+            this.weight += weight;
+        }
+
+        private int match(FilePath path, int from, int to) {
+            int length = Math.min(label.length(), to - from);
+            int matched = 1; // the first segment is matched by the lookup
+            while (matched < length && label.get(matched).equals(path.get(from + matched))) {
+                matched++;
+            }
+            return matched;
+        }
+
+        /**
+         * Splits this folder in two, keeping the first {@code length} segments of its label
+         * in a new parent folder.
+         */
+        private Node<T> split(int length) {
+            var head = new Node<T>(parent, label.subpath(0, length));
+            head.folders.put(label.get(length), this);
+            head.count = count;
+            head.weight = weight;
+            parent.folders.put(label.first(), head);
+            parent = head;
+            label = label.subpath(length);
+            return head;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package sh.adelessfox.psarc.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of I/O operations using a token bucket, both in bytes and in operations per second.
+ * <p>
+ * Each bucket holds up to one second worth of tokens. An operation that is larger than
+ * the bucket is let through once the bucket is full, and the excess is paid back by
+ * the following operations. Large transfers should therefore be split into
+ * {@linkplain #CHUNK_SIZE chunks} while the limiter is {@linkplain #isLimited() limited}.
+ * <p>
+ * Limits can be changed at any time, including while other threads are waiting.
+ * A limit of zero means unlimited. The limiter is safe to use from multiple threads.
+ */
+public final class RateLimiter {
+    /**
+     * The recommended maximum size of a single operation while the limiter is limited.
+     */
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private volatile long bytesPerSecond;
+    private volatile long operationsPerSecond;
+
+    private double bytes;
+    private double operations;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Creates an unlimited rate limiter.
+     */
+    public RateLimiter() {
+    }
+
+    public RateLimiter(long bytesPerSecond, long operationsPerSecond) {
+        setBytesPerSecond(bytesPerSecond);
+        setOperationsPerSecond(operationsPerSecond);
+    }
+
+    /**
+     * Waits until an operation of the given size is allowed.
+     *
+     * @param size the number of bytes transferred by the operation
+     * @throws InterruptedIOException if the current thread was interrupted while waiting
+     */
+    public void acquire(long size) throws InterruptedIOException {
+        if (!isLimited()) {
+            return;
+        }
+
+        while (true) {
+            long wait;
+
+            synchronized (this) {
+                refill();
+
+                long bytesPerSecond = this.bytesPerSecond;
+                long operationsPerSecond = this.operationsPerSecond;
+
+                wait = Math.max(waitNanos(size, bytes, bytesPerSecond), waitNanos(1, operations, operationsPerSecond));
+                if (wait == 0) {
+                    if (bytesPerSecond > 0) {
+                        bytes -= size;
+                    }
+                    if (operationsPerSecond > 0) {
+                        operations -= 1;
+                    }
+                    return;
+                }
+            }
+
+            // Wait in small steps so that changed limits take effect quickly
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(wait, MAX_WAIT_NANOS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for I/O rate limit");
+            }
+        }
+    }
+
+    /**
+     * Returns whether any of the limits is set.
+     */
+    public boolean isLimited() {
+        return bytesPerSecond > 0 || operationsPerSecond > 0;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("bytesPerSecond must not be negative, was " + bytesPerSecond);
+        }
+        refill();
+        this.bytesPerSecond = bytesPerSecond;
+        this.bytes = Math.min(bytes, bytesPerSecond);
+    }
+
+    public long getOperationsPerSecond() {
+        return operationsPerSecond;
+    }
+
+    public synchronized void setOperationsPerSecond(long operationsPerSecond) {
+        if (operationsPerSecond < 0) {
+            throw new IllegalArgumentException("operationsPerSecond must not be negative, was " + operationsPerSecond);
+        }
+        refill();
+        this.operationsPerSecond = operationsPerSecond;
+        this.operations = Math.min(operations, operationsPerSecond);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double seconds = (now - lastRefill) / 1e9;
+        bytes = Math.min(bytesPerSecond, bytes + seconds * bytesPerSecond);
+        operations = Math.min(operationsPerSecond, operations + seconds * operationsPerSecond);
+        lastRefill = now;
+    }
+
+    private static long waitNanos(long amount, double available, long perSecond) {
+        if (perSecond <= 0) {
+            return 0;
+        }
+        // Operations larger than the bucket only need to wait until it's full
+        double needed = Math.min(amount, perSecond);
+        if (available >= needed) {
+            return 0;
+        }
+        return (long) Math.ceil((needed - available) * 1e9 / perSecond);
+    }
+}
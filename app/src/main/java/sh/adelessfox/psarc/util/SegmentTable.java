@@ -0,0 +1,40 @@
+package sh.adelessfox.psarc.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deduplicates path segments, so that equal segments of paths share a single string.
+ * <p>
+ * A table belongs to the {@link PathTree} whose paths it deduplicates and is dropped along with it.
+ * It's not safe for use by multiple threads.
+ */
+final class SegmentTable {
+    private final Map<String, String> segments = new HashMap<>();
+
+    /**
+     * Returns the string equal to the given segment that is shared by all paths in this table.
+     */
+    String intern(String segment) {
+        var existing = segments.putIfAbsent(segment, segment);
+        return existing != null ? existing : segment;
+    }
+
+    /**
+     * Returns a path equal to the given one whose segments are shared by all paths in this table.
+     */
+    FilePath intern(FilePath path) {
+        var segments = new String[path.length()];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = intern(path.get(i));
+        }
+        return new FilePath(segments);
+    }
+
+    /**
+     * Returns the number of distinct segments in this table.
+     */
+    int size() {
+        return segments.size();
+    }
+}
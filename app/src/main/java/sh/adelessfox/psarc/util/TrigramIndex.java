@@ -0,0 +1,274 @@
+package sh.adelessfox.psarc.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An index of strings that finds the ones containing a substring, ignoring case.
+ * <p>
+ * The index maps each trigram (a sequence of three characters) to the ids of strings that
+ * contain it, where the id of a string is its index in the indexed list. A query only checks
+ * strings that contain every trigram of the query. Queries shorter than a trigram check
+ * every string.
+ * <p>
+ * The index is immutable and safe to query from multiple threads.
+ */
+public final class TrigramIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final List<String> strings;
+    private final TrigramTable trigrams;
+    private final int[][] postings;
+
+    private TrigramIndex(List<String> strings, TrigramTable trigrams, int[][] postings) {
+        this.strings = strings;
+        this.trigrams = trigrams;
+        this.postings = postings;
+    }
+
+    public static TrigramIndex of(List<String> strings) {
+        strings = List.copyOf(strings);
+
+        // Count the strings first so that each trigram gets an array of the exact size
+        var table = new TrigramTable();
+        var counts = new int[1024];
+        for (String string : strings) {
+            for (long trigram : trigrams(fold(string))) {
+                int index = table.add(trigram);
+                if (index == counts.length) {
+                    counts = Arrays.copyOf(counts, index * 2);
+                }
+                counts[index]++;
+            }
+        }
+
+        var postings = new int[table.size()][];
+        for (int i = 0; i < postings.length; i++) {
+            postings[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+
+        for (int i = 0; i < strings.size(); i++) {
+            for (long trigram : trigrams(fold(strings.get(i)))) {
+                int index = table.indexOf(trigram);
+                postings[index][counts[index]++] = i;
+            }
+        }
+
+        return new TrigramIndex(strings, table, postings);
+    }
+
+    /**
+     * Returns the ids of strings that contain the query, in ascending order.
+     *
+     * @param query the substring to search for
+     * @return the ids of matching strings
+     */
+    public int[] search(String query) {
+        var folded = fold(query);
+        if (folded.length() < 3) {
+            var ids = new int[strings.size()];
+            Arrays.setAll(ids, i -> i);
+            return filter(ids, folded);
+        }
+
+        var trigrams = trigrams(folded);
+        var lists = new int[trigrams.length][];
+        for (int i = 0; i < trigrams.length; i++) {
+            int index = this.trigrams.indexOf(trigrams[i]);
+            lists[i] = index < 0 ? EMPTY : postings[index];
+        }
+
+        // Start with the rarest trigram so that candidates shrink as fast as possible
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+        var candidates = lists[0];
+        for (int i = 1; i < lists.length && candidates.length > 0; i++) {
+            candidates = intersect(candidates, lists[i]);
+        }
+
+        return filter(candidates, folded);
+    }
+
+    /**
+     * Returns the ids of strings that contain the query, reusing the result of a previous query if possible.
+     * <p>
+     * If the query contains the previous query, only strings from the previous result are checked.
+     * This is the case when the user keeps typing.
+     *
+     * @param query          the substring to search for
+     * @param previousQuery  the previous query
+     * @param previousResult the ids returned for the previous query
+     * @return the ids of matching strings
+     */
+    public int[] search(String query, String previousQuery, int[] previousResult) {
+        var folded = fold(query);
+        if (folded.contains(fold(previousQuery))) {
+            return filter(previousResult, folded);
+        }
+        return search(query);
+    }
+
+    /**
+     * Returns the string with the given id.
+     */
+    public String get(int id) {
+        return strings.get(id);
+    }
+
+    /**
+     * Returns the number of indexed strings.
+     */
+    public int size() {
+        return strings.size();
+    }
+
+    private int[] filter(int[] ids, String folded) {
+        var result = new int[ids.length];
+        var count = 0;
+        for (int id : ids) {
+            if (contains(strings.get(id), folded)) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static boolean contains(String string, String folded) {
+        int last = string.length() - folded.length();
+        outer:
+        for (int i = 0; i <= last; i++) {
+            for (int j = 0; j < folded.length(); j++) {
+                if (fold(string.charAt(i + j)) != folded.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static int[] intersect(int[] small, int[] large) {
+        var result = new int[small.length];
+        var count = 0;
+        var from = 0;
+        for (int id : small) {
+            int index = Arrays.binarySearch(large, from, large.length, id);
+            if (index >= 0) {
+                result[count++] = id;
+                from = index + 1;
+            } else {
+                from = -index - 1;
+            }
+            if (from == large.length) {
+                break;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns distinct trigrams of the string, sorted.
+     */
+    private static long[] trigrams(String folded) {
+        int count = Math.max(0, folded.length() - 2);
+        var trigrams = new long[count];
+        for (int i = 0; i < count; i++) {
+            trigrams[i] = (long) folded.charAt(i) << 32 | (long) folded.charAt(i + 1) << 16 | folded.charAt(i + 2);
+        }
+        Arrays.sort(trigrams);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    private static String fold(String string) {
+        var chars = string.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Assigns consecutive indices to trigrams. An open-addressing table, as trigrams
+     * are looked up tens of millions of times while building the index.
+     */
+    private static final class TrigramTable {
+        private static final long NONE = -1; // trigrams only take 48 bits
+
+        private long[] keys = new long[1024];
+        private int[] indices = new int[1024];
+        private int size;
+
+        TrigramTable() {
+            Arrays.fill(keys, NONE);
+        }
+
+        int indexOf(long trigram) {
+            int mask = keys.length - 1;
+            for (int slot = hash(trigram) & mask; ; slot = slot + 1 & mask) {
+                if (keys[slot] == trigram) {
+                    return indices[slot];
+                }
+                if (keys[slot] == NONE) {
+                    return -1;
+                }
+            }
+        }
+
+        int add(long trigram) {
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = hash(trigram) & mask;
+            for (; keys[slot] != NONE; slot = slot + 1 & mask) {
+                if (keys[slot] == trigram) {
+                    return indices[slot];
+                }
+            }
+            keys[slot] = trigram;
+            indices[slot] = size;
+            return size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            var keys = this.keys;
+            var indices = this.indices;
+            this.keys = new long[keys.length * 2];
+            this.indices = new int[keys.length * 2];
+            Arrays.fill(this.keys, NONE);
+
+            int mask = this.keys.length - 1;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != NONE) {
+                    int slot = hash(keys[i]) & mask;
+                    while (this.keys[slot] != NONE) {
+                        slot = slot + 1 & mask;
+                    }
+                    this.keys[slot] = keys[i];
+                    this.indices[slot] = indices[i];
+                }
+            }
+        }
+
+        private static int hash(long trigram) {
+            long hash = trigram * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ hash >>> 32);
+        }
+    }
+}
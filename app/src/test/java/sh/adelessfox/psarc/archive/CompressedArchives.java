@@ -0,0 +1,142 @@
+package sh.adelessfox.psarc.archive;
+
+import sh.adelessfox.psarc.archive.psarc.PsarcCompression;
+import sh.adelessfox.psarc.archive.psarc.PsarcEntry;
+import sh.adelessfox.psarc.archive.psarc.PsarcHeader;
+import wtf.reversed.toolbox.collect.Bytes;
+import wtf.reversed.toolbox.collect.MutableBytes;
+import wtf.reversed.toolbox.hash.HashFunction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.SequencedMap;
+import java.util.zip.Deflater;
+
+/**
+ * Builds zlib-compressed archives for tests, as {@link sh.adelessfox.psarc.archive.psarc.PsarcArchiveWriter}
+ * only writes stored blocks.
+ */
+public final class CompressedArchives {
+    public static final int BLOCK_SIZE = 65536;
+
+    private CompressedArchives() {
+    }
+
+    /**
+     * Writes an archive with the given files. Blocks that don't shrink when compressed are stored.
+     * Files that map to the same array share their data in the archive.
+     *
+     * @param path  the path to write the archive to
+     * @param files the names of files, without a leading slash, mapped to their contents
+     */
+    public static void write(Path path, SequencedMap<String, byte[]> files) throws IOException {
+        var names = files.keySet().stream().map(name -> "/" + name).toList();
+        var manifest = String.join("\n", names).getBytes(StandardCharsets.UTF_8);
+
+        var sizes = new ArrayList<Short>();
+        var entries = new ArrayList<PsarcEntry>();
+        var blocks = new ByteArrayOutputStream();
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+
+        var written = new IdentityHashMap<byte[], PsarcEntry>();
+        entries.add(writeBlocks(MutableBytes.allocate(16), manifest, blocks, sizes, deflater));
+        for (var name : names) {
+            var hash = HashFunction.md5().hash(name).asBytes();
+            var data = files.get(name.substring(1));
+            var shared = written.get(data);
+            if (shared != null) {
+                entries.add(new PsarcEntry(hash, shared.blockOffset(), shared.uncompressedSize(), shared.fileOffset()));
+            } else {
+                var entry = writeBlocks(hash, data, blocks, sizes, deflater);
+                written.put(data, entry);
+                entries.add(entry);
+            }
+        }
+        deflater.end();
+
+        var tocSize = PsarcHeader.BYTES + PsarcEntry.BYTES * entries.size() + Short.BYTES * sizes.size();
+        var header = new PsarcHeader(
+            PsarcHeader.PSAR,
+            (short) 1,
+            (short) 4,
+            PsarcCompression.ZLIB,
+            tocSize,
+            PsarcEntry.BYTES,
+            entries.size(),
+            BLOCK_SIZE,
+            PsarcHeader.FLAGS_ABSOLUTE
+        );
+
+        var toc = ByteBuffer.allocate(tocSize);
+        header.put(toc);
+        for (var entry : entries) {
+            toc.put(new PsarcEntry(entry.hash(), entry.blockOffset(), entry.uncompressedSize(), entry.fileOffset() + tocSize).toByteBuffer());
+        }
+        for (var size : sizes) {
+            toc.putShort(size);
+        }
+
+        try (OutputStream os = Files.newOutputStream(path)) {
+            os.write(toc.array());
+            blocks.writeTo(os);
+        }
+    }
+
+    /**
+     * Generates contents that alternate between compressible and incompressible blocks.
+     *
+     * @param random the source of randomness
+     * @param size   the size of contents
+     * @param first  whether the first block must be compressible
+     */
+    public static byte[] generate(Random random, int size, boolean first) {
+        var data = new byte[size];
+        random.nextBytes(data);
+        for (int start = first ? 0 : BLOCK_SIZE; start < size; start += BLOCK_SIZE * 2) {
+            for (int i = start; i < Math.min(size, start + BLOCK_SIZE); i++) {
+                data[i] &= 0x0F;
+            }
+        }
+        return data;
+    }
+
+    private static PsarcEntry writeBlocks(
+        Bytes hash,
+        byte[] data,
+        ByteArrayOutputStream blocks,
+        List<Short> sizes,
+        Deflater deflater
+    ) {
+        var entry = new PsarcEntry(hash, sizes.size(), data.length, blocks.size());
+        var compressed = new byte[BLOCK_SIZE];
+
+        for (int offset = 0; offset < data.length; offset += BLOCK_SIZE) {
+            int length = Math.min(data.length - offset, BLOCK_SIZE);
+
+            deflater.reset();
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            int size = deflater.deflate(compressed);
+
+            if (deflater.finished() && size < length) {
+                blocks.write(compressed, 0, size);
+                sizes.add((short) size);
+            } else {
+                // A full block is stored as zero
+                blocks.write(data, offset, length);
+                sizes.add((short) length);
+            }
+        }
+
+        return entry;
+    }
+}
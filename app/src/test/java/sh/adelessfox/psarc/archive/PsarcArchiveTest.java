@@ -0,0 +1,88 @@
+package sh.adelessfox.psarc.archive;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcAssetId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import static sh.adelessfox.psarc.archive.CompressedArchives.BLOCK_SIZE;
+
+final class PsarcArchiveTest {
+    @Test
+    void testReadCompressed(@TempDir Path dir) throws IOException {
+        var files = writeArchive(dir.resolve("sample_compression.psarc"));
+
+        try (var archive = new PsarcArchive(dir.resolve("sample_compression.psarc"))) {
+            Assertions.assertEquals(files.size(), archive.getAll().size());
+
+            for (var entry : files.entrySet()) {
+                var asset = archive.get(PsarcAssetId.of(entry.getKey())).orElseThrow();
+                var buffer = archive.read(asset);
+                var actual = new byte[buffer.remaining()];
+                buffer.get(actual);
+                Assertions.assertArrayEquals(entry.getValue(), actual, entry.getKey());
+
+                var output = new ByteArrayOutputStream();
+                archive.transferTo(asset, Channels.newChannel(output));
+                Assertions.assertArrayEquals(entry.getValue(), output.toByteArray(), entry.getKey());
+            }
+        }
+    }
+
+    @Test
+    void testReadRange(@TempDir Path dir) throws IOException {
+        var files = writeArchive(dir.resolve("sample_compression.psarc"));
+        var expected = files.get("compressed.bin");
+
+        try (var archive = new PsarcArchive(dir.resolve("sample_compression.psarc"))) {
+            var asset = archive.get(PsarcAssetId.of("compressed.bin")).orElseThrow();
+            Assertions.assertFalse(archive.isStored(asset));
+
+            long[][] ranges = {
+                {100, 200},                              // within the first compressed block
+                {BLOCK_SIZE - 10, 20},                   // from a compressed block into a stored one
+                {BLOCK_SIZE * 2 - 10, 20},               // from a stored block into a compressed one
+                {BLOCK_SIZE + 5, BLOCK_SIZE * 2},        // across three blocks, starting and ending mid-block
+                {BLOCK_SIZE * 2, BLOCK_SIZE},            // a whole compressed block
+                {expected.length - 123, 123},            // the end of the last block, which is partial and compressed
+            };
+
+            for (long[] range : ranges) {
+                var position = (int) range[0];
+                var length = (int) range[1];
+
+                var heap = ByteBuffer.allocate(length);
+                archive.read(asset, position, heap);
+                Assertions.assertFalse(heap.hasRemaining());
+                Assertions.assertArrayEquals(Arrays.copyOfRange(expected, position, position + length), heap.array());
+
+                var direct = ByteBuffer.allocateDirect(length);
+                archive.read(asset, position, direct);
+                var actual = new byte[length];
+                direct.flip().get(actual);
+                Assertions.assertArrayEquals(Arrays.copyOfRange(expected, position, position + length), actual);
+            }
+        }
+    }
+
+    private static LinkedHashMap<String, byte[]> writeArchive(Path path) throws IOException {
+        var random = new Random(42);
+        var files = new LinkedHashMap<String, byte[]>();
+        files.put("compressed.bin", CompressedArchives.generate(random, BLOCK_SIZE * 4 + 1234, true));
+        files.put("stored.bin", CompressedArchives.generate(random, BLOCK_SIZE * 3 + 567, false));
+        files.put("small.bin", CompressedArchives.generate(random, 100, true));
+        files.put("empty.bin", new byte[0]);
+        CompressedArchives.write(path, files);
+        return files;
+    }
+}
@@ -3,12 +3,17 @@ package sh.adelessfox.psarc.archive;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
 import sh.adelessfox.psarc.archive.psarc.PsarcArchiveWriter;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchiveWriter.PsarcAssetOption;
 import sh.adelessfox.psarc.archive.psarc.PsarcAssetId;
 import sh.adelessfox.psarc.archive.psarc.PsarcCompression;
+import sh.adelessfox.psarc.archive.psarc.PsarcStreamingWriter;
+import sh.adelessfox.psarc.util.Channels;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Random;
@@ -45,4 +50,147 @@ final class PsarcArchiveWriterTest {
 
         Assertions.assertArrayEquals(expected, actual);
     }
+
+    @Test
+    void testPageAlignment(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("sample_page_alignment.psarc");
+        var random = new Random(42);
+        var data = new byte[50][];
+
+        try (var writer = new PsarcArchiveWriter(PsarcCompression.ZLIB, false, false, PsarcArchiveWriter.PAGE_ALIGNMENT)) {
+            for (int i = 0; i < data.length; i++) {
+                data[i] = new byte[random.nextInt(1, 1024 * 128)];
+                random.nextBytes(data[i]);
+
+                var id = PsarcAssetId.of("/file%d.bin".formatted(i));
+                var source = ArchiveWriter.AssetSources.ofByteArray(data[i]);
+                writer.add(id, source, PsarcAssetOption.NO_COMPRESS);
+            }
+
+            writer.write(path, WRITE, TRUNCATE_EXISTING, CREATE);
+        }
+
+        try (var archive = new PsarcArchive(path)) {
+            for (int i = 0; i < data.length; i++) {
+                var id = PsarcAssetId.of("file%d.bin".formatted(i));
+                var asset = archive.get(id).orElseThrow();
+
+                Assertions.assertEquals(0, asset.fileOffset() % PsarcArchiveWriter.PAGE_ALIGNMENT);
+                Assertions.assertEquals(ByteBuffer.wrap(data[i]), archive.read(id));
+            }
+        }
+    }
+
+    @Test
+    void testStoredFileSources(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("sample_stored_files.psarc");
+        var random = new Random(42);
+        var data = new byte[10][];
+
+        try (var writer = new PsarcArchiveWriter(PsarcCompression.ZLIB, false, false)) {
+            for (int i = 0; i < data.length; i++) {
+                data[i] = new byte[random.nextInt(1, 1024 * 256)];
+                random.nextBytes(data[i]);
+
+                var file = Files.write(dir.resolve("file%d.bin".formatted(i)), data[i]);
+                var id = PsarcAssetId.of("/file%d.bin".formatted(i));
+                writer.add(id, ArchiveWriter.AssetSources.ofFile(file), PsarcAssetOption.NO_COMPRESS);
+            }
+
+            writer.write(path, WRITE, TRUNCATE_EXISTING, CREATE);
+        }
+
+        try (var archive = new PsarcArchive(path)) {
+            for (int i = 0; i < data.length; i++) {
+                var id = PsarcAssetId.of("file%d.bin".formatted(i));
+                Assertions.assertEquals(ByteBuffer.wrap(data[i]), archive.read(id));
+            }
+        }
+    }
+
+    @Test
+    void testStreaming(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("sample_streaming.psarc");
+        var random = new Random(42);
+        var data = new byte[50][];
+
+        try (var writer = new PsarcStreamingWriter(path, PsarcCompression.ZLIB, PsarcArchiveWriter.PAGE_ALIGNMENT, WRITE, TRUNCATE_EXISTING, CREATE)) {
+            for (int i = 0; i < data.length; i++) {
+                data[i] = new byte[random.nextInt(0, 1024 * 128)];
+                random.nextBytes(data[i]);
+
+                var id = PsarcAssetId.of("/file%d.bin".formatted(i));
+                var channel = Channels.byteBufferChannel(ByteBuffer.wrap(data[i]));
+                if (i % 2 == 0) {
+                    writer.add(id, channel);
+                } else {
+                    writer.add(id, channel, PsarcAssetOption.NO_COMPRESS);
+                }
+            }
+
+            writer.finish();
+        }
+
+        try (var archive = new PsarcArchive(path)) {
+            for (int i = 0; i < data.length; i++) {
+                var id = PsarcAssetId.of("file%d.bin".formatted(i));
+                var asset = archive.get(id).orElseThrow();
+
+                if (i % 2 != 0) {
+                    Assertions.assertEquals(0, asset.fileOffset() % PsarcArchiveWriter.PAGE_ALIGNMENT);
+                }
+                Assertions.assertEquals(ByteBuffer.wrap(data[i]), archive.read(id));
+            }
+        }
+    }
+
+    @Test
+    void testEstimate() throws IOException {
+        try (var writer = new PsarcArchiveWriter(PsarcCompression.ZLIB, false, false)) {
+            var random = new Random(42);
+
+            for (int i = 0; i < 50; i++) {
+                var data = new byte[random.nextInt(1, 1024 * 128)];
+                random.nextBytes(data);
+
+                writer.add(PsarcAssetId.of("/file%d.bin".formatted(i)), ArchiveWriter.AssetSources.ofByteArray(data), PsarcAssetOption.NO_COMPRESS);
+                writer.add(PsarcAssetId.of("/file%d.txt".formatted(i)), ArchiveWriter.AssetSources.ofByteArray(new byte[data.length]));
+            }
+
+            var estimate = writer.estimateCompressed(6);
+            var bin = estimate.extensions().get("bin");
+            var txt = estimate.extensions().get("txt");
+
+            Assertions.assertEquals(bin.uncompressedSize(), bin.compressedSize());
+            Assertions.assertTrue(txt.ratio() < 0.01);
+
+            Assertions.assertTrue(estimate.archiveSize() < estimate.uncompressedSize());
+        }
+    }
+
+    @Test
+    void testEstimateStored(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("sample_estimate.psarc");
+
+        try (var writer = new PsarcArchiveWriter(PsarcCompression.ZLIB, false, false)) {
+            var random = new Random(42);
+
+            for (int i = 0; i < 50; i++) {
+                var data = new byte[random.nextInt(0, 1024 * 256)];
+                random.nextBytes(data);
+
+                var id = PsarcAssetId.of("/file%d.bin".formatted(i));
+                if (i % 2 == 0) {
+                    writer.add(id, ArchiveWriter.AssetSources.ofByteArray(data));
+                } else {
+                    writer.add(id, ArchiveWriter.AssetSources.ofByteArray(data), PsarcAssetOption.NO_COMPRESS);
+                }
+            }
+
+            writer.write(path, WRITE, TRUNCATE_EXISTING, CREATE);
+
+            // The writer stores every block, which is what level 0 predicts
+            Assertions.assertEquals(Files.size(path), writer.estimateCompressed(0).archiveSize());
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package sh.adelessfox.psarc.cli;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sh.adelessfox.psarc.archive.ArchiveWriter;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchiveWriter;
+import sh.adelessfox.psarc.archive.psarc.PsarcAssetId;
+import sh.adelessfox.psarc.archive.psarc.PsarcCompression;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+
+final class AssetFilterTest {
+    private static final List<String> NAMES = List.of(
+        "sounds/music.bnk",
+        "sounds/voice.bnk",
+        "textures/a.dds",
+        "textures/b.dds",
+        "textures/x.dds",
+        "textures/readme.txt",
+        "readme.txt"
+    );
+
+    @Test
+    void testExcludeOnly(@TempDir Path dir) throws IOException {
+        var filter = AssetFilter.of(List.of(), List.of("**.txt"));
+
+        Assertions.assertEquals(
+            List.of("sounds/music.bnk", "sounds/voice.bnk", "textures/a.dds", "textures/b.dds", "textures/x.dds"),
+            select(dir, filter)
+        );
+    }
+
+    @Test
+    void testMixedIncludes(@TempDir Path dir) throws IOException {
+        // The second include has no prefix, so the whole archive must be looked at
+        var filter = AssetFilter.of(List.of("sounds/**", "**.txt"), List.of("sounds/voice.*"));
+
+        Assertions.assertEquals(
+            List.of("readme.txt", "sounds/music.bnk", "textures/readme.txt"),
+            select(dir, filter)
+        );
+    }
+
+    @Test
+    void testPrefixIncludes(@TempDir Path dir) throws IOException {
+        var filter = AssetFilter.of(List.of("textures/*.dds", "regex:^sounds/m.*", "textures/x*"), List.of());
+
+        Assertions.assertEquals(
+            List.of("sounds/music.bnk", "textures/a.dds", "textures/b.dds", "textures/x.dds"),
+            select(dir, filter)
+        );
+    }
+
+    @Test
+    void testRegexPrefix() {
+        Assertions.assertEquals("textures/", AssetFilter.literalPrefix("regex:textures/.*"));
+        Assertions.assertEquals("textures/", AssetFilter.literalPrefix("regex:^textures/[ab]\\.dds"));
+        Assertions.assertEquals("sounds/m", AssetFilter.literalPrefix("regex:sounds/mu?sic"));
+        Assertions.assertEquals("sounds/m", AssetFilter.literalPrefix("regex:sounds/mu{1,2}"));
+        Assertions.assertEquals("", AssetFilter.literalPrefix("regex:sounds/.*|textures/.*"));
+        Assertions.assertEquals("", AssetFilter.literalPrefix("regex:(sounds|textures)/.*"));
+        Assertions.assertEquals("", AssetFilter.literalPrefix("regex:.*\\.dds"));
+    }
+
+    @Test
+    void testGlobGroups(@TempDir Path dir) throws IOException {
+        Assertions.assertEquals("textures/", AssetFilter.literalPrefix("textures/{a,b}.dds"));
+        Assertions.assertEquals("textures/", AssetFilter.literalPrefix("glob:textures/[!x].dds"));
+        Assertions.assertEquals("", AssetFilter.literalPrefix("{sounds,textures}/**"));
+
+        var groups = AssetFilter.of(List.of("textures/{a,x}.dds", "{readme,other}.txt"), List.of());
+        Assertions.assertEquals(List.of("readme.txt", "textures/a.dds", "textures/x.dds"), select(dir, groups));
+
+        var ranges = AssetFilter.of(List.of("textures/[!x].dds"), List.of());
+        Assertions.assertEquals(List.of("textures/a.dds", "textures/b.dds"), select(dir, ranges));
+
+        Assertions.assertTrue(AssetFilter.of(List.of("[a-c].txt"), List.of()).test("b.txt"));
+        Assertions.assertFalse(AssetFilter.of(List.of("[!a-c].txt"), List.of()).test("b.txt"));
+        Assertions.assertFalse(AssetFilter.of(List.of("textures/{a,b}.dds"), List.of()).test("textures/{a,b}.dds"));
+    }
+
+    private static List<String> select(Path dir, AssetFilter filter) throws IOException {
+        var path = dir.resolve("sample.psarc");
+
+        try (var writer = new PsarcArchiveWriter(PsarcCompression.ZLIB, false, false)) {
+            for (String name : NAMES) {
+                writer.add(PsarcAssetId.of("/" + name), ArchiveWriter.AssetSources.ofByteArray(name.getBytes()));
+            }
+            writer.write(path, WRITE, TRUNCATE_EXISTING, CREATE);
+        }
+
+        try (var archive = new PsarcArchive(path)) {
+            return filter.select(archive).stream()
+                .map(asset -> asset.id().fullName())
+                .sorted()
+                .toList();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package sh.adelessfox.psarc.extract;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sh.adelessfox.psarc.archive.ArchiveWriter;
+import sh.adelessfox.psarc.archive.CompressedArchives;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchiveWriter;
+import sh.adelessfox.psarc.archive.psarc.PsarcAssetId;
+import sh.adelessfox.psarc.archive.psarc.PsarcCompression;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardOpenOption.*;
+
+final class ArchiveExtractorTest {
+    @Test
+    void testExtract(@TempDir Path dir) throws IOException {
+        var files = writeArchive(dir.resolve("sample.psarc"));
+        var output = dir.resolve("output");
+
+        try (var archive = new PsarcArchive(dir.resolve("sample.psarc"))) {
+            var extractor = new ArchiveExtractor(archive, output);
+            var extracted = new AtomicInteger();
+            extractor.setParallelism(4);
+            extractor.setMemoryLimit(256 * 1024);
+            extractor.extract(archive.getAll(), _ -> extracted.incrementAndGet());
+
+            Assertions.assertEquals(files.size(), extracted.get());
+        }
+
+        assertExtracted(output, files);
+    }
+
+    @Test
+    void testExtractCompressed(@TempDir Path dir) throws IOException {
+        var files = writeCompressedArchive(dir.resolve("sample_compression.psarc"), 0);
+        var output = dir.resolve("output");
+
+        try (var archive = new PsarcArchive(dir.resolve("sample_compression.psarc"))) {
+            var extractor = new ArchiveExtractor(archive, output);
+            var extracted = new AtomicInteger();
+            extractor.setParallelism(4);
+            extractor.setMemoryLimit(1024 * 1024);
+            extractor.extract(archive.getAll(), _ -> extracted.incrementAndGet());
+
+            Assertions.assertEquals(files.size(), extracted.get());
+        }
+
+        assertExtracted(output, files);
+    }
+
+    @Test
+    void testExtractMapped(@TempDir Path dir) throws IOException {
+        // Large enough to be split into two chunks, the last of which is partial
+        var files = writeCompressedArchive(dir.resolve("sample_compression.psarc"), 64 * 1024 * 1024 + 3 * 65536 + 77);
+        var output = dir.resolve("output");
+
+        try (var archive = new PsarcArchive(dir.resolve("sample_compression.psarc"))) {
+            var extractor = new ArchiveExtractor(archive, output);
+            var extracted = new AtomicInteger();
+            extractor.setParallelism(4);
+            extractor.setMemoryLimit(1024 * 1024);
+            extractor.extract(archive.getAll(), _ -> extracted.incrementAndGet());
+            Assertions.assertEquals(files.size(), extracted.get());
+
+            // Small assets are mapped too when asked to
+            extracted.set(0);
+            extractor.extract(archive.getAll(), _ -> extracted.incrementAndGet(), ExtractOption.MAPPED);
+            Assertions.assertEquals(files.size(), extracted.get());
+        }
+
+        assertExtracted(output, files);
+    }
+
+    @Test
+    void testExtractDirect(@TempDir Path dir) throws IOException {
+        // Sizes of most files aren't multiples of the block size, so their last write is padded and then truncated
+        var files = writeArchive(dir.resolve("sample.psarc"));
+        var compressedFiles = writeCompressedArchive(dir.resolve("sample_compression.psarc"), 0);
+
+        try (var archive = new PsarcArchive(dir.resolve("sample.psarc"))) {
+            var extractor = new ArchiveExtractor(archive, dir.resolve("output"));
+            extractor.setParallelism(4);
+            extractor.extract(archive.getAll(), _ -> {}, ExtractOption.DIRECT);
+        }
+        try (var archive = new PsarcArchive(dir.resolve("sample_compression.psarc"))) {
+            var extractor = new ArchiveExtractor(archive, dir.resolve("output_compression"));
+            extractor.setParallelism(4);
+            extractor.extract(archive.getAll(), _ -> {}, ExtractOption.DIRECT);
+        }
+
+        assertExtracted(dir.resolve("output"), files);
+        assertExtracted(dir.resolve("output_compression"), compressedFiles);
+    }
+
+    @Test
+    void testHardLinks(@TempDir Path dir) throws IOException {
+        var random = new Random(42);
+        var compressed = CompressedArchives.generate(random, 100_000, true);
+        var stored = CompressedArchives.generate(random, 100_000, false);
+
+        var files = new LinkedHashMap<String, byte[]>();
+        files.put("a/compressed.bin", compressed);
+        files.put("b/compressed.bin", compressed);
+        files.put("c/compressed.bin", compressed);
+        files.put("a/stored.bin", stored);
+        files.put("b/stored.bin", stored);
+        files.put("a/other.bin", CompressedArchives.generate(random, 1000, true));
+        CompressedArchives.write(dir.resolve("sample_links.psarc"), files);
+
+        var output = dir.resolve("output");
+        try (var archive = new PsarcArchive(dir.resolve("sample_links.psarc"))) {
+            var extracted = new AtomicInteger();
+            new ArchiveExtractor(archive, output).extract(archive.getAll(), _ -> extracted.incrementAndGet(), ExtractOption.HARD_LINKS);
+            Assertions.assertEquals(files.size(), extracted.get());
+        }
+
+        assertExtracted(output, files);
+
+        // Where hard links aren't supported, duplicates are copied instead, which the contents already confirm
+        if (supportsLinks(dir)) {
+            Assertions.assertTrue(Files.isSameFile(output.resolve("a/compressed.bin"), output.resolve("b/compressed.bin")));
+            Assertions.assertTrue(Files.isSameFile(output.resolve("a/compressed.bin"), output.resolve("c/compressed.bin")));
+            Assertions.assertTrue(Files.isSameFile(output.resolve("a/stored.bin"), output.resolve("b/stored.bin")));
+            Assertions.assertFalse(Files.isSameFile(output.resolve("a/compressed.bin"), output.resolve("a/stored.bin")));
+        }
+    }
+
+    @Test
+    void testResume(@TempDir Path dir) throws IOException {
+        var files = writeArchive(dir.resolve("sample.psarc"));
+        var output = dir.resolve("output");
+
+        try (var archive = new PsarcArchive(dir.resolve("sample.psarc"))) {
+            var extractor = new ArchiveExtractor(archive, output);
+            var extracted = new AtomicInteger();
+            extractor.setParallelism(1);
+
+            Assertions.assertThrows(IllegalStateException.class, () -> extractor.extract(archive.getAll(), _ -> {
+                if (extracted.incrementAndGet() == 50) {
+                    throw new IllegalStateException("Crash");
+                }
+            }));
+            Assertions.assertTrue(Files.exists(output.resolve(ExtractJournal.FILE_NAME)));
+
+            extracted.set(0);
+            extractor.extract(archive.getAll(), _ -> extracted.incrementAndGet(), ExtractOption.RESUME);
+
+            Assertions.assertEquals(files.size(), extracted.get());
+            Assertions.assertFalse(Files.exists(output.resolve(ExtractJournal.FILE_NAME)));
+        }
+
+        assertExtracted(output, files);
+    }
+
+    @Test
+    void testIncremental(@TempDir Path dir) throws IOException {
+        var files = writeArchive(dir.resolve("sample.psarc"));
+        var output = dir.resolve("output");
+
+        try (var archive = new PsarcArchive(dir.resolve("sample.psarc"))) {
+            var extractor = new ArchiveExtractor(archive, output);
+            extractor.extract(archive.getAll(), _ -> {}, ExtractOption.INCREMENTAL);
+            Assertions.assertTrue(Files.exists(output.resolve(ExtractJournal.FILE_NAME)));
+
+            // Unchanged files must not be rewritten
+            var unchanged = output.resolve("folder1/file1.bin");
+            var unchangedTime = FileTime.from(Instant.parse("2000-01-01T00:00:00Z"));
+            Files.setLastModifiedTime(unchanged, unchangedTime);
+
+            // Files that were touched but kept their contents must be compared rather than rewritten
+            var touched = output.resolve("folder3/file3.bin");
+            var touchedTime = FileTime.from(Instant.now().plus(2, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS));
+            Files.setLastModifiedTime(touched, touchedTime);
+
+            // Modified files must be restored, even if their size is the same
+            var modified = output.resolve("folder2/file2.bin");
+            var data = Files.readAllBytes(modified);
+            data[0] ^= 1;
+            Files.write(modified, data);
+            Files.setLastModifiedTime(modified, FileTime.from(Instant.now().plus(1, ChronoUnit.HOURS)));
+
+            // Only files recorded in the journal must be deleted
+            Files.writeString(output.resolve("removed.bin"), "abc");
+            Files.writeString(output.resolve("unknown.bin"), "abc");
+            try (var journal = ExtractJournal.open(output, 0, true)) {
+                journal.add("removed.bin", new ExtractJournal.Entry(3, 0));
+            }
+
+            extractor.extract(archive.getAll(), _ -> {}, ExtractOption.INCREMENTAL, ExtractOption.DELETE_REMOVED);
+
+            Assertions.assertEquals(unchangedTime, Files.getLastModifiedTime(unchanged));
+            Assertions.assertEquals(touchedTime, Files.getLastModifiedTime(touched));
+            Assertions.assertFalse(Files.exists(output.resolve("removed.bin")));
+            Assertions.assertTrue(Files.exists(output.resolve("unknown.bin")));
+        }
+
+        assertExtracted(output, files);
+
+        // A new build of the archive with the same layout, but different contents of a stored asset
+        var rebuilt = new LinkedHashMap<>(files);
+        var data = rebuilt.get("folder1/file1.bin").clone();
+        data[data.length / 2] ^= 1;
+        rebuilt.put("folder1/file1.bin", data);
+        writeArchive(dir.resolve("rebuilt.psarc"), rebuilt);
+
+        try (var archive = new PsarcArchive(dir.resolve("rebuilt.psarc"))) {
+            var asset = archive.get(PsarcAssetId.of("folder1/file1.bin")).orElseThrow();
+            Assertions.assertTrue(archive.isStored(asset));
+
+            new ArchiveExtractor(archive, output).extract(archive.getAll(), _ -> {}, ExtractOption.INCREMENTAL);
+        }
+
+        assertExtracted(output, rebuilt);
+    }
+
+    private static boolean supportsLinks(Path dir) {
+        try {
+            var file = Files.createTempFile(dir, "link", null);
+            Files.createLink(file.resolveSibling(file.getFileName() + ".link"), file);
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+            return false;
+        }
+    }
+
+    static Map<String, byte[]> writeArchive(Path path) throws IOException {
+        var files = new LinkedHashMap<String, byte[]>();
+        var random = new Random(42);
+
+        for (int i = 0; i < 100; i++) {
+            var data = new byte[random.nextInt(0, 1024 * 192)];
+            random.nextBytes(data);
+            files.put("folder%d/file%d.bin".formatted(i % 7, i), data);
+        }
+
+        writeArchive(path, files);
+        return files;
+    }
+
+    static void writeArchive(Path path, Map<String, byte[]> files) throws IOException {
+        try (var writer = new PsarcArchiveWriter(PsarcCompression.ZLIB, false, false)) {
+            for (var entry : files.entrySet()) {
+                writer.add(PsarcAssetId.of("/" + entry.getKey()), ArchiveWriter.AssetSources.ofByteArray(entry.getValue()));
+            }
+            writer.write(path, WRITE, TRUNCATE_EXISTING, CREATE);
+        }
+    }
+
+    static Map<String, byte[]> writeCompressedArchive(Path path, int largeSize) throws IOException {
+        var files = new LinkedHashMap<String, byte[]>();
+        var random = new Random(42);
+
+        for (int i = 0; i < 30; i++) {
+            var data = CompressedArchives.generate(random, random.nextInt(0, 1024 * 192), i % 2 == 0);
+            files.put("folder%d/file%d.bin".formatted(i % 7, i), data);
+        }
+        if (largeSize > 0) {
+            files.put("large.bin", CompressedArchives.generate(random, largeSize, true));
+        }
+
+        CompressedArchives.write(path, files);
+        return files;
+    }
+
+    static void assertExtracted(Path output, Map<String, byte[]> files) throws IOException {
+        for (var entry : files.entrySet()) {
+            var path = output.resolve(entry.getKey());
+            Assertions.assertEquals(entry.getValue().length, Files.size(path));
+            Assertions.assertArrayEquals(entry.getValue(), Files.readAllBytes(path));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package sh.adelessfox.psarc.extract;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+final class DirectOutputTest {
+    // Empty, shorter than a block, exactly one block, and across enough writes to be flushed, with a partial last one
+    private static final int[] SIZES = {0, 1, 4096, 1024 * 1024 * 9 + 123};
+
+    @Test
+    void testDirect(@TempDir Path dir) throws IOException {
+        testWrite(new DirectOutput.Group(dir, true), dir);
+    }
+
+    @Test
+    void testFallback(@TempDir Path dir) throws IOException {
+        testWrite(new DirectOutput.Group(dir, false), dir);
+    }
+
+    private static void testWrite(DirectOutput.Group group, Path dir) throws IOException {
+        var random = new Random(42);
+
+        for (int size : SIZES) {
+            var data = new byte[size];
+            random.nextBytes(data);
+
+            // Outputs of a group reuse the same buffers
+            var path = dir.resolve("file" + size + ".bin");
+            try (var output = group.open(path)) {
+                var buffer = output.buffer();
+                for (int position = 0; position < size; ) {
+                    int length = Math.min(buffer.capacity(), size - position);
+                    buffer.clear().put(data, position, length).flip();
+                    output.write();
+                    position += length;
+                }
+            }
+
+            Assertions.assertEquals(size, Files.size(path));
+            Assertions.assertArrayEquals(data, Files.readAllBytes(path));
+        }
+    }
+}
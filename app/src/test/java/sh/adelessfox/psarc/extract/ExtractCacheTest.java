@@ -0,0 +1,56 @@
+package sh.adelessfox.psarc.extract;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sh.adelessfox.psarc.archive.psarc.PsarcArchive;
+import sh.adelessfox.psarc.archive.psarc.PsarcAsset;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+final class ExtractCacheTest {
+    @Test
+    void testExtract(@TempDir Path dir) throws IOException {
+        var path = dir.resolve("sample.psarc");
+        var files = ArchiveExtractorTest.writeArchive(path);
+        var cache = new ExtractCache(dir.resolve("cache"), Long.MAX_VALUE);
+
+        try (var archive = new PsarcArchive(path)) {
+            for (PsarcAsset asset : archive.getAll()) {
+                Assertions.assertTrue(cache.find(path, asset).isEmpty());
+
+                var written = new AtomicLong();
+                var file = cache.extract(path, archive, asset, written::set);
+                Assertions.assertEquals(asset.uncompressedSize(), written.get());
+                Assertions.assertEquals(asset.id().fileName(), file.getFileName().toString());
+                Assertions.assertArrayEquals(files.get(asset.id().fullName()), Files.readAllBytes(file));
+
+                // The cached file is reused
+                Assertions.assertEquals(file, cache.find(path, asset).orElseThrow());
+                Assertions.assertEquals(file, cache.extract(path, archive, asset, _ -> Assertions.fail()));
+            }
+        }
+    }
+
+    @Test
+    void testEvict(@TempDir Path dir) throws IOException {
+        var path = dir.resolve("sample.psarc");
+        ArchiveExtractorTest.writeArchive(path);
+        var cache = new ExtractCache(dir.resolve("cache"), 0);
+
+        try (var archive = new PsarcArchive(path)) {
+            var asset = archive.getAll().iterator().next();
+            cache.extract(path, archive, asset, _ -> {});
+            cache.evict();
+
+            Assertions.assertTrue(cache.find(path, asset).isEmpty());
+            try (Stream<Path> stream = Files.list(dir.resolve("cache"))) {
+                Assertions.assertEquals(0, stream.count());
+            }
+        }
+    }
+}
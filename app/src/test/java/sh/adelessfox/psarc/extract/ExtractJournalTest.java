@@ -0,0 +1,25 @@
+package sh.adelessfox.psarc.extract;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+final class ExtractJournalTest {
+    @Test
+    void testReadWhileOpen(@TempDir Path dir) throws IOException {
+        try (var journal = ExtractJournal.open(dir, 0x1234, false)) {
+            journal.add("folder/file1.bin", new ExtractJournal.Entry(10, 0x89ABCDEFL));
+            journal.add("folder/file2 with spaces.bin", new ExtractJournal.Entry(20, ExtractJournal.Entry.NO_CHECKSUM));
+
+            // Entries must survive a crash that leaves the journal open
+            var state = ExtractJournal.read(dir);
+            Assertions.assertNotNull(state);
+            Assertions.assertEquals(0x1234, state.fingerprint());
+            Assertions.assertEquals(new ExtractJournal.Entry(10, 0x89ABCDEFL), state.entries().get("folder/file1.bin"));
+            Assertions.assertEquals(new ExtractJournal.Entry(20, ExtractJournal.Entry.NO_CHECKSUM), state.entries().get("folder/file2 with spaces.bin"));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package sh.adelessfox.psarc.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static sh.adelessfox.psarc.util.ContentType.Format.*;
+
+final class ContentTypeTest {
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R'};
+
+    @Test
+    void testMagic() {
+        Assertions.assertEquals(new ContentType(PNG, null), ContentType.detect(PNG_HEADER));
+        Assertions.assertEquals(new ContentType(DDS, null), ContentType.detect(bytes("DDS |\0\0\0")));
+        Assertions.assertEquals(new ContentType(BNK, null), ContentType.detect(bytes("BKHD\u0018\0\0\0")));
+        Assertions.assertEquals(new ContentType(WAV, null), ContentType.detect(bytes("RIFF\0\0\0\0WAVEfmt \u0010\0\0\0\u0001\0\u0002\0")));
+        Assertions.assertEquals(new ContentType(WEM, null), ContentType.detect(bytes("RIFF\0\0\0\0WAVEfmt \u0018\0\0\0\u00FF\u00FF\u0002\0")));
+        Assertions.assertEquals(new ContentType(PSARC, null), ContentType.detect(bytes("PSAR\0\u0001\0\u0004zlib")));
+        Assertions.assertEquals(new ContentType(MP4, null), ContentType.detect(bytes("\0\0\0 ftypisom")));
+    }
+
+    @Test
+    void testText() {
+        Assertions.assertEquals(new ContentType(TEXT, null), ContentType.detect(bytes("Hello, world!\r\n")));
+        Assertions.assertEquals(new ContentType(XML, null), ContentType.detect("\uFEFF  <?xml version=\"1.0\"?>\n<root/>".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(new ContentType(JSON, null), ContentType.detect(bytes("\n{\"key\": [1, 2, 3]}")));
+    }
+
+    @Test
+    void testEmptyAndBinary() {
+        Assertions.assertEquals(new ContentType(EMPTY, null), ContentType.detect(new byte[0]));
+        Assertions.assertEquals(new ContentType(BINARY, null), ContentType.detect(new byte[]{1, 2, 3, 0, 4, 5}));
+    }
+
+    @Test
+    void testZlib() {
+        Assertions.assertEquals(new ContentType(ZLIB, PNG), ContentType.detect(deflate(PNG_HEADER)));
+        Assertions.assertEquals(new ContentType(ZLIB, TEXT), ContentType.detect(deflate(bytes("Some text compressed with zlib\n".repeat(10)))));
+        Assertions.assertEquals(new ContentType(ZLIB, BINARY), ContentType.detect(deflate(new byte[]{1, 2, 3, 0, 4, 5})));
+    }
+
+    @Test
+    void testZlibWithinZlib() {
+        // Only the outer stream is inflated, so the payload is another zlib stream
+        var inner = deflate(bytes("Compressed twice ".repeat(100)));
+        Assertions.assertEquals(new ContentType(ZLIB, ZLIB), ContentType.detect(deflate(inner)));
+    }
+
+    @Test
+    void testTruncatedZlib() {
+        // Only the first few hundred bytes are sniffed, so the stream is usually cut short
+        var random = new Random(42);
+        var data = new byte[65536];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(26));
+        }
+        var compressed = deflate(data);
+        Assertions.assertTrue(compressed.length > 512);
+        Assertions.assertEquals(new ContentType(ZLIB, TEXT), ContentType.detect(Arrays.copyOf(compressed, 512)));
+    }
+
+    @Test
+    void testZlibFalsePositives() {
+        // "x " and "xZ" pass the zlib header check, but don't inflate
+        Assertions.assertEquals(0, ('x' << 8 | ' ') % 31);
+        Assertions.assertEquals(new ContentType(TEXT, null), ContentType.detect(bytes("x = 1\ny = 2\n")));
+        Assertions.assertEquals(new ContentType(TEXT, null), ContentType.detect(bytes("x ")));
+        Assertions.assertEquals(new ContentType(BINARY, null), ContentType.detect(new byte[]{'x', ' ', 0, 0, 0, 0}));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        var output = new ByteArrayOutputStream();
+        try (var stream = new DeflaterOutputStream(output, new Deflater(Deflater.BEST_COMPRESSION))) {
+            stream.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return output.toByteArray();
+    }
+}
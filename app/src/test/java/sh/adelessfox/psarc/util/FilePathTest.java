@@ -0,0 +1,65 @@
+package sh.adelessfox.psarc.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+final class FilePathTest {
+    @Test
+    void testEquality() {
+        var path = FilePath.of("a/b/c", "/");
+
+        Assertions.assertEquals(path, FilePath.of(List.of("a", "b", "c")));
+        Assertions.assertEquals(path, FilePath.of("a", "/").resolve("b").resolve("c"));
+        Assertions.assertEquals(path, FilePath.of("a", "/").resolve(FilePath.of("b/c", "/")));
+        Assertions.assertEquals(path, FilePath.of("x/a/b/c/y", "/").subpath(1, 4));
+        Assertions.assertEquals(path.hashCode(), FilePath.of(List.of("a", "b", "c")).hashCode());
+
+        Assertions.assertNotEquals(path, FilePath.of("a/b", "/"));
+        Assertions.assertNotEquals(path, FilePath.of("a/bc", "/"));
+        Assertions.assertEquals(FilePath.of(), FilePath.of("", "/"));
+        Assertions.assertEquals(FilePath.of(), path.subpath(1, 1));
+    }
+
+    @Test
+    void testOrdering() {
+        var paths = new ArrayList<>(List.of(
+            FilePath.of("a/c", "/"),
+            FilePath.of("a-b", "/"),
+            FilePath.of("a/b/c", "/"),
+            FilePath.of("a/b", "/"),
+            FilePath.of("b", "/"),
+            FilePath.of("a", "/"),
+            FilePath.of()
+        ));
+        Collections.shuffle(paths);
+        Collections.sort(paths);
+
+        // Paths are compared segment by segment, so "a/..." goes before "a-b" even though '-' < '/'
+        Assertions.assertEquals(List.of(
+            FilePath.of(),
+            FilePath.of("a", "/"),
+            FilePath.of("a/b", "/"),
+            FilePath.of("a/b/c", "/"),
+            FilePath.of("a/c", "/"),
+            FilePath.of("a-b", "/"),
+            FilePath.of("b", "/")
+        ), paths);
+    }
+
+    @Test
+    void testAccessors() {
+        var path = FilePath.of("a\\b\\c", "\\\\");
+
+        Assertions.assertEquals(3, path.length());
+        Assertions.assertEquals("a", path.first());
+        Assertions.assertEquals("b", path.get(1));
+        Assertions.assertEquals("c", path.last());
+        Assertions.assertEquals("a/b/c", path.full());
+        Assertions.assertEquals("a\\b\\c", path.full("\\"));
+        Assertions.assertTrue(FilePath.of().isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package sh.adelessfox.psarc.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+final class LineIndexTest {
+    @Test
+    void testLines() throws IOException {
+        for (String text : List.of("", "a", "a\n", "\n", "\n\n", "ab\ncd\r\nef", "line1\nline2\nline3\n", "abcdefgh\nij")) {
+            Assertions.assertEquals(split(text), lines(text, 3), text);
+        }
+    }
+
+    @Test
+    void testManyPages() throws IOException {
+        // Lines of all lengths, including ones that span several pages and pages without terminators
+        var random = new Random(42);
+        var builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.repeat('x', random.nextInt(random.nextInt(10) == 0 ? 100 : 5)).append('\n');
+        }
+        var text = builder.toString();
+
+        Assertions.assertEquals(split(text), lines(text, 7));
+    }
+
+    @Test
+    void testPartialScan() throws IOException {
+        var text = "aa\nbb\ncc\ndd";
+        var data = text.getBytes(StandardCharsets.UTF_8);
+        var index = new LineIndex(new PageCache((position, target) -> target.put(data, (int) position, target.remaining()), data.length, 4, 2));
+
+        // The line that continues on the next page isn't known yet
+        Assertions.assertTrue(index.scan());
+        Assertions.assertEquals(1, index.count());
+        Assertions.assertEquals(0, index.start(0));
+        Assertions.assertEquals(2, index.end(0));
+    }
+
+    private static List<String> lines(String text, int pageSize) throws IOException {
+        var data = text.getBytes(StandardCharsets.UTF_8);
+        // Only two pages are cached, so most positions must be found again once a page is reloaded
+        var pages = new PageCache((position, target) -> target.put(data, (int) position, target.remaining()), data.length, pageSize, 2);
+        var index = new LineIndex(pages);
+        while (index.scan()) {
+            // Keep scanning
+        }
+
+        var result = new ArrayList<String>();
+        for (int line = 0; line < index.count(); line++) {
+            var start = index.start(line);
+            var end = index.end(line);
+            if (start < 0 || end < 0) {
+                pages.load(index.pageOf(line));
+                pages.load(index.pageOf(line + 1));
+                start = index.start(line);
+                end = index.end(line);
+            }
+            result.add(new String(data, (int) start, (int) (end - start), StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    private static List<String> split(String text) {
+        var lines = new ArrayList<>(List.of(text.split("\n", -1)));
+        if (lines.size() > 1 && text.endsWith("\n")) {
+            lines.removeLast();
+        }
+        return lines;
+    }
+}
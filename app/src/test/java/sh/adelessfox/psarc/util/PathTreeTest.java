@@ -0,0 +1,144 @@
+package sh.adelessfox.psarc.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+final class PathTreeTest {
+    @Test
+    void testSplitChain() {
+        var tree = new PathTree<String>(String::length);
+        tree.put(path("a/b/c/d.bin"), "d");
+        Assertions.assertEquals(path("a/b/c"), single(tree.root()).label());
+
+        // A path that diverges within the chain splits it
+        tree.put(path("a/b/e/f.bin"), "ff");
+
+        var ab = single(tree.root());
+        Assertions.assertEquals(path("a/b"), ab.label());
+        Assertions.assertEquals(2, ab.count());
+        Assertions.assertEquals(3, ab.weight());
+        Assertions.assertEquals(2, ab.folders().size());
+
+        var c = tree.find(path("a/b/c"));
+        Assertions.assertEquals(path("c"), c.label());
+        Assertions.assertEquals(path("a/b/c"), c.path());
+        Assertions.assertEquals(1, c.count());
+        Assertions.assertEquals(1, c.weight());
+
+        Assertions.assertEquals("d", tree.get(path("a/b/c/d.bin")));
+        Assertions.assertEquals("ff", tree.get(path("a/b/e/f.bin")));
+    }
+
+    @Test
+    void testFileAtSplitPoint() {
+        var tree = new PathTree<String>(String::length);
+        tree.put(path("a/b/c/d.bin"), "d");
+        tree.put(path("a/b/x.bin"), "xx");
+
+        var ab = single(tree.root());
+        Assertions.assertEquals(path("a/b"), ab.label());
+        Assertions.assertEquals(List.of("x.bin"), List.copyOf(ab.files().keySet()));
+        Assertions.assertEquals(path("c"), single(ab).label());
+        Assertions.assertEquals(2, ab.count());
+        Assertions.assertEquals(3, ab.weight());
+        Assertions.assertEquals(1, single(ab).count());
+
+        Assertions.assertEquals("d", tree.get(path("a/b/c/d.bin")));
+        Assertions.assertEquals("xx", tree.get(path("a/b/x.bin")));
+        Assertions.assertNull(tree.get(path("a/x.bin")));
+    }
+
+    @Test
+    void testReplace() {
+        var tree = new PathTree<String>(String::length);
+        tree.put(path("a/b/c/d.bin"), "d");
+        Assertions.assertNull(tree.put(path("a/b/e/f.bin"), "fff"));
+        Assertions.assertEquals("fff", tree.put(path("a/b/e/f.bin"), "fffff"));
+
+        // The count stays the same, but the weight accounts for the new value
+        Assertions.assertEquals(2, tree.root().count());
+        Assertions.assertEquals(6, tree.root().weight());
+        Assertions.assertEquals(1, tree.find(path("a/b/e")).count());
+        Assertions.assertEquals(5, tree.find(path("a/b/e")).weight());
+        Assertions.assertEquals("fffff", tree.get(path("a/b/e/f.bin")));
+    }
+
+    @Test
+    void testFindWithinLabel() {
+        var tree = new PathTree<String>();
+        tree.put(path("a/b/c/d.bin"), "d");
+
+        // A folder path that ends within a merged label finds the merged folder
+        var node = tree.find(path("a/b"));
+        Assertions.assertNotNull(node);
+        Assertions.assertEquals(path("a/b/c"), node.path());
+        Assertions.assertSame(node, tree.find(path("a")));
+        Assertions.assertSame(node, tree.find(path("a/b/c")));
+        Assertions.assertSame(tree.root(), tree.find(FilePath.of()));
+
+        // Values are only found in exactly matching folders
+        Assertions.assertNull(tree.get(path("a/b/d.bin")));
+        Assertions.assertNull(tree.find(path("a/x")));
+        Assertions.assertNull(tree.find(path("a/b/c/d")));
+        Assertions.assertNull(tree.find(path("b")));
+    }
+
+    @Test
+    void testRandom() {
+        var random = new Random(42);
+        var tree = new PathTree<String>(String::length);
+        var expected = new HashMap<FilePath, String>();
+
+        for (int i = 0; i < 5000; i++) {
+            var builder = new StringBuilder();
+            for (int depth = random.nextInt(1, 6); depth > 0; depth--) {
+                builder.append((char) ('a' + random.nextInt(3))).append('/');
+            }
+            var path = path(builder.append("file").append(random.nextInt(10)).toString());
+            var value = "x".repeat(random.nextInt(1, 10));
+            Assertions.assertEquals(expected.put(path, value), tree.put(path, value));
+        }
+
+        for (var entry : expected.entrySet()) {
+            Assertions.assertEquals(entry.getValue(), tree.get(entry.getKey()));
+        }
+        check(tree.root(), expected);
+    }
+
+    private static void check(PathTree.Node<String> node, HashMap<FilePath, String> expected) {
+        var path = node.path();
+        var count = 0;
+        var weight = 0L;
+        for (var entry : expected.entrySet()) {
+            if (startsWith(entry.getKey(), path)) {
+                count++;
+                weight += entry.getValue().length();
+            }
+        }
+        Assertions.assertEquals(count, node.count());
+        Assertions.assertEquals(weight, node.weight());
+
+        for (var folder : node.folders()) {
+            // Folders with a single folder and no files are merged with it
+            Assertions.assertTrue(folder.folders().size() != 1 || !folder.files().isEmpty());
+            check(folder, expected);
+        }
+    }
+
+    private static boolean startsWith(FilePath path, FilePath prefix) {
+        return path.length() > prefix.length() && path.subpath(0, prefix.length()).equals(prefix);
+    }
+
+    private static PathTree.Node<String> single(PathTree.Node<String> node) {
+        Assertions.assertEquals(1, node.folders().size());
+        return node.folders().iterator().next();
+    }
+
+    private static FilePath path(String path) {
+        return FilePath.of(path, "/");
+    }
+}
@@ -0,0 +1,40 @@
+package sh.adelessfox.psarc.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+final class SegmentTableTest {
+    @Test
+    void testIntern() {
+        var table = new SegmentTable();
+        var first = table.intern(new String("textures"));
+        var second = table.intern(new String("textures"));
+
+        Assertions.assertEquals("textures", first);
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, table.size());
+    }
+
+    @Test
+    void testInternPath() {
+        var table = new SegmentTable();
+        var a = table.intern(FilePath.of("textures/a.dds", "/"));
+        var b = table.intern(FilePath.of("textures/b.dds", "/"));
+
+        Assertions.assertEquals(FilePath.of("textures/a.dds", "/"), a);
+        Assertions.assertSame(a.first(), b.first());
+        Assertions.assertEquals(3, table.size());
+    }
+
+    @Test
+    void testSeparateTables() {
+        var path = FilePath.of("textures/a.dds", "/");
+        var a = new SegmentTable().intern(path);
+        var b = new SegmentTable().intern(path);
+
+        // Tables don't share anything, yet their paths are equal
+        Assertions.assertEquals(a, b);
+        Assertions.assertEquals(0, a.compareTo(b));
+        Assertions.assertEquals(a.hashCode(), b.hashCode());
+    }
+}
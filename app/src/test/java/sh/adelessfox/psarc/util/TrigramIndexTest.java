@@ -0,0 +1,122 @@
+package sh.adelessfox.psarc.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+final class TrigramIndexTest {
+    // Letters of both cases, including ones outside ASCII, so that case folding matters
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789/._-\u00E9\u00C9\u00DF\u03A3\u03C3\u03C2";
+
+    @Test
+    void testSearch() {
+        var random = new Random(42);
+        // Enough distinct trigrams for the table to grow several times
+        var names = names(random, 3000);
+        var index = TrigramIndex.of(names);
+        Assertions.assertEquals(names.size(), index.size());
+
+        for (int i = 0; i < 2000; i++) {
+            var query = query(random, names);
+            Assertions.assertArrayEquals(expected(names, query), index.search(query), query);
+        }
+    }
+
+    @Test
+    void testShortQueries() {
+        var names = List.of("Textures/A.dds", "sounds/a.bnk", "readme");
+        var index = TrigramIndex.of(names);
+
+        Assertions.assertArrayEquals(new int[]{0, 1, 2}, index.search(""));
+        Assertions.assertArrayEquals(new int[]{0, 2}, index.search("E"));
+        Assertions.assertArrayEquals(new int[]{0, 1}, index.search("a."));
+        Assertions.assertArrayEquals(new int[]{}, index.search("zz"));
+    }
+
+    @Test
+    void testCaseFolding() {
+        var names = List.of("TEXTURES/\u00C9T\u00C9.DDS", "textures/\u00E9t\u00E9.dds", "\u03A3\u039F\u03A6\u0399\u0391", "\u03C3\u03BF\u03C6\u03B9\u03B1", "other");
+        var index = TrigramIndex.of(names);
+
+        Assertions.assertArrayEquals(new int[]{0, 1}, index.search("\u00C9t\u00E9.dds"));
+        Assertions.assertArrayEquals(new int[]{0, 1}, index.search("xTuR"));
+        Assertions.assertArrayEquals(new int[]{2, 3}, index.search("\u03C3\u03BF\u03C6"));
+        Assertions.assertArrayEquals(new int[]{}, index.search("texturesx"));
+    }
+
+    @Test
+    void testIncrementalSearch() {
+        var random = new Random(42);
+        var names = names(random, 1000);
+        var index = TrigramIndex.of(names);
+
+        for (int i = 0; i < 200; i++) {
+            // Type a query one character at a time, then erase some of it, as the user would
+            var target = query(random, names);
+            var previousQuery = "";
+            var previousResult = index.search(previousQuery);
+            for (int length = 1; length <= target.length(); length++) {
+                var query = target.substring(0, length);
+                var result = index.search(query, previousQuery, previousResult);
+                Assertions.assertArrayEquals(expected(names, query), result, query);
+                previousQuery = query;
+                previousResult = result;
+            }
+
+            var query = target.substring(0, target.length() / 2);
+            Assertions.assertArrayEquals(expected(names, query), index.search(query, previousQuery, previousResult), query);
+        }
+    }
+
+    private static List<String> names(Random random, int count) {
+        var names = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(string(random, random.nextInt(5, 30)));
+        }
+        return names;
+    }
+
+    private static String query(Random random, List<String> names) {
+        if (random.nextInt(4) == 0) {
+            // Most likely not in any name
+            return string(random, random.nextInt(0, 6));
+        }
+        var name = names.get(random.nextInt(names.size()));
+        int from = random.nextInt(name.length());
+        var query = name.substring(from, random.nextInt(from, name.length() + 1)).toCharArray();
+        for (int i = 0; i < query.length; i++) {
+            if (random.nextBoolean()) {
+                query[i] = Character.isUpperCase(query[i]) ? Character.toLowerCase(query[i]) : Character.toUpperCase(query[i]);
+            }
+        }
+        return new String(query);
+    }
+
+    private static String string(Random random, int length) {
+        var chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+
+    private static int[] expected(List<String> names, String query) {
+        return IntStream.range(0, names.size())
+            .filter(id -> contains(names.get(id), query))
+            .toArray();
+    }
+
+    private static boolean contains(String string, String query) {
+        for (int i = 0; i <= string.length() - query.length(); i++) {
+            if (string.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}